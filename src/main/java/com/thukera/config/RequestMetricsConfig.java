@@ -0,0 +1,47 @@
+package com.thukera.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Records per-request metrics for API calls
+ * auth.user.lookups - user entity lookups performed by AuthenticationHelper in one request
+ */
+@Configuration
+public class RequestMetricsConfig implements WebMvcConfigurer {
+
+	private static final Logger logger = LogManager.getLogger(RequestMetricsConfig.class);
+
+	private final DistributionSummary userLookups;
+
+	public RequestMetricsConfig(MeterRegistry meterRegistry) {
+		this.userLookups = DistributionSummary.builder("auth.user.lookups")
+				.description("User lookups performed per request")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new HandlerInterceptor() {
+			@Override
+			public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+					Exception ex) {
+				Integer lookups = (Integer) request.getAttribute(AuthenticationHelper.USER_LOOKUPS_ATTRIBUTE);
+				int count = lookups != null ? lookups : 0;
+				userLookups.record(count);
+				logger.debug("### User lookups for {} {}: {}", request.getMethod(), request.getRequestURI(), count);
+			}
+		}).addPathPatterns("/api/**");
+	}
+}
@@ -0,0 +1,15 @@
+package com.thukera.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduled jobs, on by default - my.finances.app.scheduling=false turns them off on an instance
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "my.finances.app.scheduling", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+
+}
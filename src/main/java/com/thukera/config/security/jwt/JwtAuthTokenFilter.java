@@ -3,7 +3,9 @@ package com.thukera.config.security.jwt;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -14,17 +16,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
+import com.thukera.user.security.service.TokenVersionService;
 import com.thukera.user.security.service.UserDetailsServiceImpl;
+import com.thukera.user.security.service.UserPrinciple;
 
 public class JwtAuthTokenFilter extends OncePerRequestFilter {
 	@Autowired
 	private JwtProvider tokenProvider;
 	@Autowired
 	private UserDetailsServiceImpl userDetailsService;
+	@Autowired
+	private TokenVersionService tokenVersionService;
 	private static final Logger logger = LoggerFactory.getLogger(JwtAuthTokenFilter.class);
 
 	// Public endpoints that should skip JWT authentication
@@ -66,9 +71,9 @@ public class JwtAuthTokenFilter extends OncePerRequestFilter {
 			throws ServletException, IOException {
 		try {
 			String jwt = resolveToken(request);
-			if (jwt != null && tokenProvider.validateJwtToken(jwt)) {
-				String username = tokenProvider.getUserNameFromJwtToken(jwt);
-				UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+			Optional<Claims> claims = tokenProvider.verifyJwtToken(jwt);
+			UserPrinciple userDetails = claims.isPresent() ? resolvePrincipal(claims.get()) : null;
+			if (userDetails != null) {
 				UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
 						userDetails, null, userDetails.getAuthorities());
 				authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -80,6 +85,22 @@ public class JwtAuthTokenFilter extends OncePerRequestFilter {
 		filterChain.doFilter(request, response);
 	}
 
+	/**
+	 * Builds the principal from token claims, rejecting revoked tokens
+	 * Tokens minted before claims carried the user id fall back to a database lookup
+	 */
+	private UserPrinciple resolvePrincipal(Claims claims) {
+		UserPrinciple principal = claims.containsKey(JwtProvider.CLAIM_USER_ID)
+				? UserPrinciple.fromClaims(claims)
+				: (UserPrinciple) userDetailsService.loadUserByUsername(claims.getSubject());
+
+		if (!tokenVersionService.isCurrent(principal.getId(), JwtProvider.getTokenVersion(claims))) {
+			logger.debug("### Revoked token for user: {}", principal.getUsername());
+			return null;
+		}
+		return principal;
+	}
+
 	/**
 	 * Resolves JWT token either from Authorization header or cookie
 	 */
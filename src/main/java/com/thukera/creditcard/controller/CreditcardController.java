@@ -1,8 +1,15 @@
 package com.thukera.creditcard.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -10,19 +17,31 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.security.access.prepost.PreAuthorize;
 
 import com.thukera.creditcard.model.dto.InvoiceDTO;
+import com.thukera.creditcard.model.dto.InvoiceHeaderDTO;
+import com.thukera.creditcard.model.dto.InvoicePageDTO;
+import com.thukera.creditcard.model.dto.PurchaseBatchResultDTO;
 import com.thukera.creditcard.model.dto.PurchaseDTO;
+import com.thukera.creditcard.model.dto.PurchasePageDTO;
+import com.thukera.creditcard.model.dto.StatementImportResultDTO;
 import com.thukera.creditcard.model.entities.CreditCard;
 import com.thukera.creditcard.model.form.CreditCardForm;
 import com.thukera.creditcard.model.form.CreditPurchaseForm;
 import com.thukera.creditcard.model.form.InvoiceForm;
+import com.thukera.creditcard.model.form.RecurringChargeForm;
 import com.thukera.creditcard.service.CreditCardService;
 import com.thukera.creditcard.service.CreditPurchaseService;
 import com.thukera.creditcard.service.InvoiceService;
+import com.thukera.creditcard.service.InvoiceSummaryService;
 import com.thukera.creditcard.service.CreditTransactionService;
+import com.thukera.creditcard.service.StatementExportService;
+import com.thukera.creditcard.service.StatementImportService;
 
 /**
  * REST Controller for Credit Card operations
@@ -48,6 +67,15 @@ public class CreditcardController {
 	@Autowired
 	private CreditTransactionService creditTransactionService;
 
+	@Autowired
+	private StatementExportService statementExportService;
+
+	@Autowired
+	private StatementImportService statementImportService;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
 
 	// ======================================= CREDIT CARD CRUD =======================================
 	@PostMapping
@@ -82,6 +110,39 @@ public class CreditcardController {
 		return ResponseEntity.ok(cardForm);
 	}
 	
+	@GetMapping("/{id}/invoices")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<InvoicePageDTO> getCardInvoices(@PathVariable Long id,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "12") int size) {
+		logger.debug("######## ### GET CREDIT CARD INVOICES | ID: {} | PAGE: {} ### ########", id, page);
+
+		InvoicePageDTO invoicePage = creditCardService.getCardInvoices(id, page, size);
+		return ResponseEntity.ok(invoicePage);
+	}
+
+	@GetMapping("/{id}/export")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<StreamingResponseBody> exportCard(@PathVariable Long id) {
+		logger.debug("######## ### EXPORT CREDIT CARD HISTORY | ID: {} ### ########", id);
+
+		StreamingResponseBody body = statementExportService.exportCard(id);
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+	}
+	
+	@PostMapping(value = "/{id}/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<StatementImportResultDTO> importStatement(@PathVariable Long id,
+			@RequestParam("file") MultipartFile file,
+			@RequestParam(defaultValue = "false") boolean includeOngoing) throws IOException {
+		logger.debug("######## ### IMPORT STATEMENT | CARD ID: {} | FILE: {} ### ########", id, file.getOriginalFilename());
+
+		try (InputStream input = file.getInputStream()) {
+			StatementImportResultDTO result = statementImportService.importStatement(id, input, includeOngoing);
+			return ResponseEntity.ok(result);
+		}
+	}
+	
 	@PutMapping("/check-limit/{id}")
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
 	public ResponseEntity<CreditCardForm> putCardUsedLimit(@PathVariable Long id) {
@@ -94,6 +155,34 @@ public class CreditcardController {
 	}
 
 
+	// ======================================= RECURRING CHARGES =======================================
+
+	@GetMapping("/{id}/recurring")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<List<RecurringChargeForm>> getRecurringCharges(@PathVariable Long id) {
+		logger.debug("######## ### GET RECURRING CHARGES | CARD ID: {} ### ########", id);
+
+		return ResponseEntity.ok(creditCardService.getRecurringCharges(id));
+	}
+
+	@PostMapping("/{id}/recurring")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<RecurringChargeForm> createRecurringCharge(@PathVariable Long id, @RequestBody RecurringChargeForm chargeForm) {
+		logger.debug("######## ### CREATE RECURRING CHARGE | CARD ID: {} ### ########", id);
+		logger.debug("### RecurringChargeForm: {}", chargeForm);
+
+		return ResponseEntity.ok(creditCardService.createRecurringCharge(id, chargeForm));
+	}
+
+	@PutMapping("/recurring/end/{chargeId}")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<RecurringChargeForm> endRecurringCharge(@PathVariable Long chargeId,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+		logger.debug("######## ### END RECURRING CHARGE | ID: {} ### ########", chargeId);
+
+		return ResponseEntity.ok(creditCardService.endRecurringCharge(chargeId, endDate));
+	}
+
 		
 	// ======================================= CREDIT PURCHASE CRUD =======================================
 	
@@ -108,6 +197,17 @@ public class CreditcardController {
 	}
 
 
+	@PostMapping("/purchase/batch")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<PurchaseBatchResultDTO> insertPurchases(@RequestBody List<CreditPurchaseForm> purchaseForms) {
+		logger.debug("######## ### INSERT PURCHASE BATCH ### ########");
+		logger.debug("### Batch size: {}", purchaseForms != null ? purchaseForms.size() : 0);
+
+		PurchaseBatchResultDTO result = creditPurchaseService.createPurchases(purchaseForms);
+		return ResponseEntity.ok(result);
+	}
+
+
 	@GetMapping("/purchase/{purchaseId}")
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
 	public ResponseEntity<PurchaseDTO> getPurchaseDetails(@PathVariable Long purchaseId) {
@@ -147,6 +247,32 @@ public class CreditcardController {
 		return ResponseEntity.ok(invoiceDTO);
 	}
 	
+	@GetMapping("/invoice/{invoiceId}/header")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<InvoiceHeaderDTO> getInvoiceHeader(@PathVariable Long invoiceId) {
+		logger.debug("######## ### GET INVOICE HEADER BY ID: {} ### ########", invoiceId);
+		InvoiceHeaderDTO invoiceHeader = invoiceService.getInvoiceHeader(invoiceId);
+		return ResponseEntity.ok(invoiceHeader);
+	}
+
+	@GetMapping("/invoice/{invoiceId}/purchases")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<PurchasePageDTO> getInvoicePurchases(@PathVariable Long invoiceId,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size) {
+		logger.debug("######## ### GET INVOICE PURCHASES: {} | CURSOR: {} ### ########", invoiceId, cursor);
+		PurchasePageDTO purchasePage = invoiceService.getInvoicePurchases(invoiceId, cursor, size);
+		return ResponseEntity.ok(purchasePage);
+	}
+
+	@GetMapping("/invoice/{invoiceId}/export")
+	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+	public ResponseEntity<StreamingResponseBody> exportInvoice(@PathVariable Long invoiceId) {
+		logger.debug("######## ### EXPORT INVOICE BY ID: {} ### ########", invoiceId);
+		StreamingResponseBody body = statementExportService.exportInvoice(invoiceId);
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+	}
+
 	@PutMapping("/invoice/{invoiceId}")
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
 	public ResponseEntity<InvoiceDTO> getCurrentInvoice(@PathVariable("invoiceId") Long invoiceId, @RequestBody InvoiceForm invoiceForm) {
@@ -160,8 +286,9 @@ public class CreditcardController {
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
 	public ResponseEntity<InvoiceDTO> updateTotalAmount(@PathVariable Long invoiceId) {
 		logger.debug("######## ### CHECK INVOICE TOTAL AMOUNT BY ID: {} ### ########", invoiceId);
-		InvoiceDTO invoiceDTO = invoiceService.getInvoiceById(invoiceId);
-		InvoiceDTO updatedInvoice = InvoiceDTO.fromEntity(creditTransactionService.updateTotalAmount(invoiceDTO));		
+		// owner scoped lookup before the recompute
+		invoiceService.getInvoiceHeader(invoiceId);
+		InvoiceDTO updatedInvoice = InvoiceDTO.fromEntity(creditTransactionService.updateTotalAmount(invoiceId));		
 		return ResponseEntity.ok(updatedInvoice);
 	}
 	
@@ -173,6 +300,14 @@ public class CreditcardController {
 		return ResponseEntity.ok(invoiceDTO);
 	}
 
+	@PostMapping("/invoice/summary/rebuild")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<Integer> rebuildInvoiceSummary(@RequestParam(required = false) Long invoiceId) {
+		logger.debug("######## ### REBUILD INVOICE CATEGORY SUMMARY: {} ### ########", invoiceId != null ? invoiceId : "ALL");
+		int rows = invoiceSummaryService.rebuild(invoiceId);
+		return ResponseEntity.ok(rows);
+	}
+
 	@GetMapping("/invoice/current-invoice/{invoiceId}")
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
 	public ResponseEntity<InvoiceDTO> getCurrentInvoice(@PathVariable("invoiceId") Long cardId) {
@@ -1,11 +1,13 @@
 package com.thukera.creditcard.mapper;
 
+import java.util.List;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Component;
 
 import com.thukera.creditcard.model.dto.InvoiceDTOFromCreditCard;
 import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
 import com.thukera.creditcard.model.form.CreditCardForm;
 import com.thukera.user.model.entities.User;
 
@@ -39,10 +41,12 @@ public class CreditCardMapper {
 
     /**
      * Convert CreditCard entity to CreditCardForm DTO
+     * Only the given invoices are mapped, never the whole card history
      * @param entity the CreditCard entity
+     * @param invoices the invoice window to embed
      * @return CreditCardForm DTO
      */
-    public CreditCardForm toForm(CreditCard entity) {
+    public CreditCardForm toForm(CreditCard entity, List<Invoice> invoices) {
         return new CreditCardForm(
             entity.getCardId(),
             entity.getBank(),
@@ -55,7 +59,7 @@ public class CreditCardMapper {
             entity.getTotalLimit(),
             entity.getEstimateLimitforInvoice(),
             entity.getDataCadastro(),
-            entity.getInvoices().stream()
+            invoices.stream()
                 .map(InvoiceDTOFromCreditCard::fromEntity)
                 .collect(Collectors.toList())
         );
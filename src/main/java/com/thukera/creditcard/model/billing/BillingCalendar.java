@@ -0,0 +1,137 @@
+package com.thukera.creditcard.model.billing;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.thukera.creditcard.model.entities.CreditCard;
+
+/**
+ * Billing cycles of a credit card, built once from its billing period start, end and due day
+ * A date belongs to the cycle of its month; days past the end of a short month fall on its last day
+ * Immutable, safe to share between threads
+ */
+public final class BillingCalendar {
+
+	private static final int SHORTEST_MONTH = 28;
+	private static final int MONTH_LENGTHS = 4;
+
+	private final int billingPeriodStart;
+	private final int billingPeriodEnd;
+	private final int dueDay;
+
+	// clamped day of month, indexed by month length - 28
+	private final int[] startDays = new int[MONTH_LENGTHS];
+	private final int[] endDays = new int[MONTH_LENGTHS];
+	// due day falls on the following month : [length of cycle month][length of following month]
+	private final int[][] dueDays = new int[MONTH_LENGTHS][MONTH_LENGTHS];
+
+	private BillingCalendar(int billingPeriodStart, int billingPeriodEnd, int dueDay) {
+		this.billingPeriodStart = billingPeriodStart;
+		this.billingPeriodEnd = billingPeriodEnd;
+		this.dueDay = dueDay;
+		for (int length = 0; length < MONTH_LENGTHS; length++) {
+			startDays[length] = Math.min(billingPeriodStart, SHORTEST_MONTH + length);
+			endDays[length] = Math.min(billingPeriodEnd, SHORTEST_MONTH + length);
+			for (int nextLength = 0; nextLength < MONTH_LENGTHS; nextLength++) {
+				dueDays[length][nextLength] = Math.min(Math.min(dueDay, SHORTEST_MONTH + length), SHORTEST_MONTH + nextLength);
+			}
+		}
+	}
+
+	/**
+	 * @param billingPeriodStart day of month the cycle starts
+	 * @param billingPeriodEnd day of month the cycle closes
+	 * @param dueDay day of the following month the invoice is due
+	 * @throws IllegalArgumentException if a day is below 1
+	 */
+	public static BillingCalendar of(int billingPeriodStart, int billingPeriodEnd, int dueDay) {
+		if (billingPeriodStart < 1 || billingPeriodEnd < 1 || dueDay < 1) {
+			throw new IllegalArgumentException("Invalid billing days: " + billingPeriodStart + "/" + billingPeriodEnd + "/" + dueDay);
+		}
+		return new BillingCalendar(billingPeriodStart, billingPeriodEnd, dueDay);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the card has no billing period configured
+	 */
+	public static BillingCalendar of(CreditCard card) {
+		if (card.getBillingPeriodStart() == null || card.getBillingPeriodEnd() == null || card.getDueDate() == null) {
+			throw new IllegalArgumentException("Credit card has no billing period configured");
+		}
+		return of(card.getBillingPeriodStart(), card.getBillingPeriodEnd(), card.getDueDate());
+	}
+
+	/**
+	 * True while the card still has the billing days this calendar was built from
+	 */
+	public boolean matches(CreditCard card) {
+		return card.getBillingPeriodStart() != null && card.getBillingPeriodStart() == billingPeriodStart
+				&& card.getBillingPeriodEnd() != null && card.getBillingPeriodEnd() == billingPeriodEnd
+				&& card.getDueDate() != null && card.getDueDate() == dueDay;
+	}
+
+	/**
+	 * Cycle the date is billed on
+	 */
+	public Cycle cycleOf(LocalDate date) {
+		return cycle(date.getYear(), date.getMonthValue());
+	}
+
+	public Cycle cycleOf(YearMonth month) {
+		return cycle(month.getYear(), month.getMonthValue());
+	}
+
+	/**
+	 * Cycles of the `count` months following the month of baseDate, in order
+	 * Each step is a table lookup, no date arithmetic; the Cycle and its three dates are still created per month
+	 */
+	public List<Cycle> nextCycles(LocalDate baseDate, int count) {
+		List<Cycle> cycles = new ArrayList<>(Math.max(count, 0));
+		int year = baseDate.getYear();
+		int month = baseDate.getMonthValue();
+		for (int i = 0; i < count; i++) {
+			if (month == 12) {
+				month = 1;
+				year++;
+			} else {
+				month++;
+			}
+			cycles.add(cycle(year, month));
+		}
+		return cycles;
+	}
+
+	/**
+	 * A purchase dated before the close of the current month's cycle is billed on the cycle of its own date
+	 * instead of the current invoice
+	 */
+	public boolean isRetroactive(LocalDate purchaseDate, LocalDate today) {
+		int length = lengthOfMonth(today.getYear(), today.getMonthValue());
+		return purchaseDate.isBefore(today.withDayOfMonth(endDays[length - SHORTEST_MONTH]));
+	}
+
+	private Cycle cycle(int year, int month) {
+		int nextYear = month == 12 ? year + 1 : year;
+		int nextMonth = month == 12 ? 1 : month + 1;
+		int length = lengthOfMonth(year, month) - SHORTEST_MONTH;
+		int nextLength = lengthOfMonth(nextYear, nextMonth) - SHORTEST_MONTH;
+		return new Cycle(
+				LocalDate.of(year, month, startDays[length]),
+				LocalDate.of(year, month, endDays[length]),
+				LocalDate.of(nextYear, nextMonth, dueDays[length][nextLength]));
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		return Month.of(month).length(Year.isLeap(year));
+	}
+
+	/**
+	 * One billing cycle : first day, closing day and due date of its invoice
+	 */
+	public record Cycle(LocalDate start, LocalDate end, LocalDate due) {
+	}
+}
@@ -0,0 +1,14 @@
+package com.thukera.creditcard.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Value and count of purchases of one category about to be added to an invoice
+ */
+public interface CategoryDeltaRow {
+
+	Long getCategoryId();
+	BigDecimal getTotalValue();
+	Long getPurchaseCount();
+
+}
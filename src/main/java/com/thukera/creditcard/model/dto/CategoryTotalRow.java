@@ -0,0 +1,14 @@
+package com.thukera.creditcard.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Category totals of one invoice, read from the summary table
+ */
+public interface CategoryTotalRow {
+
+	String getCategory();
+	BigDecimal getTotalValue();
+	BigDecimal getPaidValue();
+
+}
@@ -3,10 +3,13 @@ package com.thukera.creditcard.model.dto;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.thukera.creditcard.model.entities.Installment;
 import com.thukera.creditcard.model.entities.Invoice;
 import com.thukera.creditcard.model.enums.InvoiceStatus;
 import com.thukera.creditcard.model.form.CreditPanel;
@@ -64,7 +67,28 @@ public class InvoiceDTO {
 		this.creditcard = creditcard;
 	}
 	
+	// Invoice lines already paired with their installment - linear in the invoice size
+	public static InvoiceDTO fromLines(Invoice invoice, List<InvoiceLine> lines) {
+	    return new InvoiceDTO(
+	        invoice.getInvoiceId(),
+	        invoice.getStartDate(),
+	        invoice.getEndDate(),
+	        invoice.getDueDate(),
+	        invoice.getStatus(),
+	        invoice.getTotalAmount(),
+	        invoice.getEstimateLimit(),
+	        CreditCardDTOFromInvoice.fromEntity(invoice.getCreditCard()),
+	        lines.stream()
+            .map(line -> PurchaseDTOFromInvoice.fromEntity(line.getPurchase(), line.getInstallment()))
+            .collect(Collectors.toList())
+	    );
+	}
+
 	public static InvoiceDTO fromEntity(Invoice invoice) {
+	    // installments of this invoice only (tb_installment keyed on invoice_id), not every installment of each purchase
+	    Map<Long, Installment> installmentsByPurchase = invoice.getInstallments().stream()
+	        .collect(Collectors.toMap(inst -> inst.getPurchase().getPurchaseId(), Function.identity(), (first, second) -> first));
+
 	    return new InvoiceDTO(
 	        invoice.getInvoiceId(),
 	        invoice.getStartDate(),
@@ -75,7 +99,7 @@ public class InvoiceDTO {
 	        invoice.getEstimateLimit(),
 	        CreditCardDTOFromInvoice.fromEntity(invoice.getCreditCard()),
 	        invoice.getPurchases().stream()
-            .map(purchase -> PurchaseDTOFromInvoice.fromEntity(purchase, invoice))
+            .map(purchase -> PurchaseDTOFromInvoice.fromEntity(purchase, installmentsByPurchase.get(purchase.getPurchaseId())))
             .collect(Collectors.toList())
 	    );
 	}
@@ -0,0 +1,37 @@
+package com.thukera.creditcard.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+
+/**
+ * Flat scalar row of the export queries
+ * One row per invoice line (invoice columns repeated), purchase columns null for an empty invoice
+ */
+public interface InvoiceExportRow {
+
+	Long getCardId();
+	String getNickname();
+
+	Long getInvoiceId();
+	LocalDate getStartDate();
+	LocalDate getEndDate();
+	LocalDate getDueDate();
+	InvoiceStatus getStatus();
+	BigDecimal getTotalAmount();
+	BigDecimal getEstimateLimit();
+
+	Long getPurchaseId();
+	String getDescricao();
+	BigDecimal getPurchaseValue();
+	LocalDateTime getPurchaseDateTime();
+	String getCategory();
+
+	Long getInstallmentId();
+	Integer getCurrentInstallment();
+	Integer getTotalInstallment();
+	BigDecimal getInstallmentValue();
+
+}
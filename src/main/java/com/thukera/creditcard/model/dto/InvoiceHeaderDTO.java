@@ -0,0 +1,46 @@
+package com.thukera.creditcard.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Invoice without its purchase list - purchases are paged through PurchasePageDTO
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InvoiceHeaderDTO {
+
+	private Long invoiceId;
+	@JsonFormat(pattern = "dd-MM-yyyy")
+	private LocalDate startDate;
+	@JsonFormat(pattern = "dd-MM-yyyy")
+	private LocalDate endDate;
+	@JsonFormat(pattern = "dd-MM-yyyy")
+	private LocalDate dueDate;
+	private InvoiceStatus status;
+	private BigDecimal totalAmount;
+	private BigDecimal estimateLimit;
+	private CreditCardDTOFromInvoice creditcard;
+
+	public static InvoiceHeaderDTO fromEntity(Invoice invoice) {
+		return new InvoiceHeaderDTO(
+			invoice.getInvoiceId(),
+			invoice.getStartDate(),
+			invoice.getEndDate(),
+			invoice.getDueDate(),
+			invoice.getStatus(),
+			invoice.getTotalAmount(),
+			invoice.getEstimateLimit(),
+			CreditCardDTOFromInvoice.fromEntity(invoice.getCreditCard())
+		);
+	}
+}
@@ -0,0 +1,15 @@
+package com.thukera.creditcard.model.dto;
+
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Installment;
+
+/**
+ * One purchase of an invoice paired with its installment billed on that invoice
+ * Installment is null for single payment purchases
+ */
+public interface InvoiceLine {
+
+	CreditPurchase getPurchase();
+	Installment getInstallment();
+
+}
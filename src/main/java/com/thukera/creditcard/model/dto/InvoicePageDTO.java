@@ -0,0 +1,22 @@
+package com.thukera.creditcard.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of a card's invoice history, newest first
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InvoicePageDTO {
+
+	private List<InvoiceDTOFromCreditCard> invoices;
+	private int page;
+	private int size;
+	private boolean hasNext;
+
+}
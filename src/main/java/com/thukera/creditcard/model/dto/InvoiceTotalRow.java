@@ -0,0 +1,16 @@
+package com.thukera.creditcard.model.dto;
+
+import java.math.BigDecimal;
+
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+
+/**
+ * Current total and status of one invoice, read back after an atomic update
+ */
+public interface InvoiceTotalRow {
+
+	Long getInvoiceId();
+	BigDecimal getTotalAmount();
+	InvoiceStatus getStatus();
+
+}
@@ -0,0 +1,31 @@
+package com.thukera.creditcard.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one item of a purchase batch, index is its position in the request
+ * purchaseId is set when CREATED, message when REJECTED
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PurchaseBatchItemDTO {
+
+	public static final String CREATED = "CREATED";
+	public static final String REJECTED = "REJECTED";
+
+	private int index;
+	private String status;
+	private Long purchaseId;
+	private String message;
+
+	public static PurchaseBatchItemDTO created(int index, Long purchaseId) {
+		return new PurchaseBatchItemDTO(index, CREATED, purchaseId, null);
+	}
+
+	public static PurchaseBatchItemDTO rejected(int index, String message) {
+		return new PurchaseBatchItemDTO(index, REJECTED, null, message);
+	}
+}
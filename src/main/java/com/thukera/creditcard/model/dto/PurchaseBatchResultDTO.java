@@ -0,0 +1,21 @@
+package com.thukera.creditcard.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of a purchase batch, one item per request entry in request order
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PurchaseBatchResultDTO {
+
+	private int created;
+	private int rejected;
+	private List<PurchaseBatchItemDTO> items;
+
+}
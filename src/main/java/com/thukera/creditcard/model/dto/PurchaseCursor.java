@@ -0,0 +1,44 @@
+package com.thukera.creditcard.model.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import com.thukera.creditcard.model.entities.CreditPurchase;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Keyset position in an invoice's purchase list - the last (purchaseDateTime, purchaseId) already sent
+ * Travels to the client as an opaque url safe token
+ */
+@Data
+@AllArgsConstructor
+public class PurchaseCursor {
+
+	private static final String SEPARATOR = "|";
+
+	private LocalDateTime purchaseDateTime;
+	private Long purchaseId;
+
+	public static PurchaseCursor after(CreditPurchase purchase) {
+		return new PurchaseCursor(purchase.getPurchaseDateTime(), purchase.getPurchaseId());
+	}
+
+	public String encode() {
+		String raw = purchaseDateTime + SEPARATOR + purchaseId;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static PurchaseCursor decode(String token) {
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int split = raw.lastIndexOf(SEPARATOR);
+			return new PurchaseCursor(LocalDateTime.parse(raw.substring(0, split)), Long.valueOf(raw.substring(split + 1)));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+	}
+}
@@ -8,7 +8,7 @@ import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.thukera.creditcard.model.entities.CreditPurchase;
-import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.Installment;
 import com.thukera.creditcard.model.enums.InvoiceStatus;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -27,21 +27,15 @@ public class PurchaseDTOFromInvoice {
 	private String category;
 	private InstallmentDTOFromInvoice installment;
 
-	public static PurchaseDTOFromInvoice fromEntity(CreditPurchase purchase, Invoice invoice) {
-	    InstallmentDTOFromInvoice currentInstallment = purchase.getInstallments().stream()
-	        .filter(inst -> inst.getInvoice() != null &&
-	                        inst.getInvoice().getInvoiceId().equals(invoice.getInvoiceId()))
-	        .findFirst()
-	        .map(InstallmentDTOFromInvoice::fromEntity)
-	        .orElse(null);
-
+	// Installment already resolved for this invoice (null for single payment purchases)
+	public static PurchaseDTOFromInvoice fromEntity(CreditPurchase purchase, Installment installment) {
 	    return new PurchaseDTOFromInvoice(
 	        purchase.getPurchaseId(),
 	        purchase.getDescricao(),
 	        purchase.getValue(),
 	        purchase.getPurchaseDateTime(),
 	        purchase.getCategory() != null ? purchase.getCategory().getName() : null,
-	        currentInstallment
+	        installment != null ? InstallmentDTOFromInvoice.fromEntity(installment) : null
 	    );
 	}
 }
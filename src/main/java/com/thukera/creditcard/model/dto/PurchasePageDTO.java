@@ -0,0 +1,21 @@
+package com.thukera.creditcard.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of an invoice's purchases, ordered by purchase date then id
+ * nextCursor is null on the last page
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PurchasePageDTO {
+
+	private List<PurchaseDTOFromInvoice> purchases;
+	private String nextCursor;
+
+}
@@ -0,0 +1,25 @@
+package com.thukera.creditcard.model.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a statement import
+ * skipped : payments, refunds and installments of plans billed from their first installment
+ * errors holds the first problems found, "line N: reason"
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatementImportResultDTO {
+
+	private long lines;
+	private long created;
+	private long skipped;
+	private long rejected;
+	private List<String> errors;
+
+}
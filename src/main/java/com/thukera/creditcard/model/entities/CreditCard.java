@@ -15,6 +15,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
@@ -32,12 +33,12 @@ import lombok.ToString;
 
 @Data
 @Entity
-@Table(name = "tb_credit_card")
+@Table(name = "tb_credit_card", indexes = @Index(name = "idx_credit_card_user", columnList = "user_id"))
 public class CreditCard {
 
     @Id
     @Column(name = "card_id")
-    @SequenceGenerator(name = "credit_card_seq", sequenceName = "seq_credit_card", allocationSize = 1)
+    @SequenceGenerator(name = "credit_card_seq", sequenceName = "seq_credit_card", allocationSize = 50)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "credit_card_seq")
     private Long cardId;
 
@@ -76,7 +77,8 @@ public class CreditCard {
     @Column(name = "billing_due_date")
     private Integer dueDate;
 
-    @Column(name = "used_limit", precision = 16, scale = 2)
+    // written on insert only, later changes are atomic updates in CreditcardRepository
+    @Column(name = "used_limit", precision = 16, scale = 2, updatable = false)
     private BigDecimal usedLimit = BigDecimal.ZERO;
 
     @NotNull
@@ -1,6 +1,7 @@
 package com.thukera.creditcard.model.entities;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,17 +21,20 @@ import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 import lombok.ToString;
 
 @Data
 @Entity
-@Table(name = "tb_credit_purchase")
+// one purchase per recurring charge and cycle
+@Table(name = "tb_credit_purchase", uniqueConstraints = @UniqueConstraint(name = "uk_purchase_recurring_cycle",
+		columnNames = { "recurring_charge_id", "recurring_cycle_start" }))
 public class CreditPurchase {
 
 	@Id
 	@Column(name = "purchase_id")
-	@SequenceGenerator(name = "purchase_seq", sequenceName = "seq_purchase", allocationSize = 1)
+	@SequenceGenerator(name = "purchase_seq", sequenceName = "seq_purchase", allocationSize = 50)
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_seq")
 	private Long purchaseId;
 
@@ -59,6 +63,15 @@ public class CreditPurchase {
 	@JoinColumn(name = "card_id", nullable = false)
 	private CreditCard creditCard;
 
+	// set on purchases materialized from a recurring charge, with the start of the cycle they bill
+	@ToString.Exclude
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "recurring_charge_id")
+	private RecurringCharge recurringCharge;
+
+	@Column(name = "recurring_cycle_start")
+	private LocalDate recurringCycleStart;
+
 	@ToString.Exclude
 	@OneToMany(mappedBy = "purchase", cascade = CascadeType.ALL, orphanRemoval = true)
 	private List<Installment> installments = new ArrayList<>();
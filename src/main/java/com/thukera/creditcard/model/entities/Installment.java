@@ -26,7 +26,7 @@ import lombok.ToString;
 public class Installment {
 
 	@Id
-	@SequenceGenerator(name = "installment_seq", sequenceName = "seq_installment", allocationSize = 1)
+	@SequenceGenerator(name = "installment_seq", sequenceName = "seq_installment", allocationSize = 50)
 	@Column(name = "installment_id")
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "installment_seq")
 	private Long installmentId;
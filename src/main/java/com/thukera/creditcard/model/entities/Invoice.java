@@ -18,24 +18,32 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OrderBy;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Builder;
 import lombok.Data;
 import lombok.ToString;
 
 @Data
 @Entity
-@Table(name = "tb_invoice")
+// one invoice per card and cycle ; status and end date drive the lifecycle job's bulk updates
+@Table(name = "tb_invoice",
+		uniqueConstraints = @UniqueConstraint(name = "uk_invoice_card_cycle", columnNames = { "card_id", "start_date", "end_date" }),
+		indexes = @Index(name = "idx_invoice_status_end_date", columnList = "status, end_date"))
 public class Invoice {
 
 	@Id
 	@Column(name = "invoice_id")
+	// one id per nextval : invoices are inserted by InvoiceCycleRepository with nextval('invoice_seq'), a pooled block would be skipped per row
+	@SequenceGenerator(name = "invoice_seq", sequenceName = "invoice_seq", allocationSize = 1)
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_seq")
 	private Long invoiceId;
 
@@ -44,7 +52,8 @@ public class Invoice {
 	@ToString.Exclude
 	private CreditCard creditCard;
 
-	@Column(name = "total_amount", precision = 16, scale = 2)
+	// written on insert only, later changes are atomic updates in InvoiceRepository
+	@Column(name = "total_amount", precision = 16, scale = 2, updatable = false)
 	private BigDecimal totalAmount;
 	
 	@Column(name = "estimate_limit", precision = 16, scale = 2)
@@ -67,8 +76,8 @@ public class Invoice {
 	@JoinTable(name = "tb_invoice_purchase", joinColumns = @JoinColumn(name = "invoice_id"), inverseJoinColumns = @JoinColumn(name = "purchase_id"))
 	private List<CreditPurchase> purchases = new ArrayList<>();
 	
-	@OneToMany(cascade = CascadeType.ALL)
-	@JoinTable(name = "tb_installment", joinColumns = @JoinColumn(name = "invoice_id"), inverseJoinColumns = @JoinColumn(name = "installment_id"))
+	// read side of Installment.invoice : installments are written through their purchase
+	@OneToMany(mappedBy = "invoice")
 	private List<Installment> installments = new ArrayList<>();
 
 	public Invoice() {
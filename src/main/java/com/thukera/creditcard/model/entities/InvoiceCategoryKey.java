@@ -0,0 +1,25 @@
+package com.thukera.creditcard.model.entities;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Embeddable
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceCategoryKey implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "invoice_id", nullable = false)
+	private Long invoiceId;
+
+	@Column(name = "category_id", nullable = false)
+	private Long categoryId;
+
+}
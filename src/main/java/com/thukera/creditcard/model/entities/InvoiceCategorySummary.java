@@ -0,0 +1,46 @@
+package com.thukera.creditcard.model.entities;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Pre-summed purchases of one category on one invoice - backs the invoice CreditPanel
+ * Kept up to date with deltas on every purchase write, rebuildable from tb_invoice_purchase
+ */
+@Data
+@Entity
+@Table(name = "tb_invoice_category_summary")
+public class InvoiceCategorySummary {
+
+	@EmbeddedId
+	private InvoiceCategoryKey id;
+
+	// sum of purchase values
+	@Column(name = "total_value", precision = 16, scale = 2, nullable = false)
+	private BigDecimal totalValue = BigDecimal.ZERO;
+
+	// sum of the paid share of each purchase as of this invoice
+	@Column(name = "paid_value", precision = 16, scale = 2, nullable = false)
+	private BigDecimal paidValue = BigDecimal.ZERO;
+
+	@Column(name = "purchase_count", nullable = false)
+	private int purchaseCount;
+
+	public InvoiceCategorySummary() {
+		super();
+	}
+
+	public InvoiceCategorySummary(InvoiceCategoryKey id, BigDecimal totalValue, BigDecimal paidValue, int purchaseCount) {
+		super();
+		this.id = id;
+		this.totalValue = totalValue;
+		this.paidValue = paidValue;
+		this.purchaseCount = purchaseCount;
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.thukera.creditcard.model.entities;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * One run of the invoice lifecycle job : how many invoices it closed and opened, see InvoiceLifecycleService
+ */
+@Data
+@Entity
+@Table(name = "tb_invoice_lifecycle_run")
+public class InvoiceLifecycleRun {
+
+	@Id
+	@Column(name = "run_id")
+	@SequenceGenerator(name = "invoice_lifecycle_run_seq", sequenceName = "seq_invoice_lifecycle_run", allocationSize = 50)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_lifecycle_run_seq")
+	private Long runId;
+
+	// day the cycles were compared against
+	@Column(name = "business_date", nullable = false)
+	private LocalDate businessDate;
+
+	@Column(name = "started_at", nullable = false)
+	private LocalDateTime startedAt;
+
+	@Column(name = "finished_at", nullable = false)
+	private LocalDateTime finishedAt;
+
+	// instance that ran the job
+	@Column(name = "owner", length = 255, nullable = false)
+	private String owner;
+
+	// OPEN or PENDING invoices whose cycle ended
+	@Column(name = "closed_count", nullable = false)
+	private int closedCount;
+
+	// PENDING invoices whose cycle started
+	@Column(name = "opened_count", nullable = false)
+	private int openedCount;
+
+	public InvoiceLifecycleRun() {
+		super();
+	}
+}
@@ -0,0 +1,42 @@
+package com.thukera.creditcard.model.entities;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Lease on a scheduled job, one row per job
+ * An instance runs the job only while it holds the lease, so a job scheduled on every instance runs once, see JobLeaseService
+ */
+@Data
+@Entity
+@Table(name = "tb_job_lease")
+public class JobLease {
+
+	@Id
+	@Column(name = "job_name", length = 100)
+	private String jobName;
+
+	// instance holding the lease
+	@Column(name = "owner", length = 255, nullable = false)
+	private String owner;
+
+	// other instances may take the lease over once this is past
+	@Column(name = "locked_until", nullable = false)
+	private LocalDateTime lockedUntil;
+
+	public JobLease() {
+		super();
+	}
+
+	public JobLease(String jobName, String owner, LocalDateTime lockedUntil) {
+		super();
+		this.jobName = jobName;
+		this.owner = owner;
+		this.lockedUntil = lockedUntil;
+	}
+}
@@ -17,7 +17,7 @@ import lombok.Data;
 public class PurchaseCategory {
 
 	@Id
-	@SequenceGenerator(name = "purchase_category_seq", sequenceName = "seq_purchase_category", allocationSize = 1)
+	@SequenceGenerator(name = "purchase_category_seq", sequenceName = "seq_purchase_category", allocationSize = 50)
 	@Column(name = "purchase_category_id")
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_category_seq")
     private Long purchaseClassId;
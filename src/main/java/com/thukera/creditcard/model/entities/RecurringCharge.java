@@ -0,0 +1,64 @@
+package com.thukera.creditcard.model.entities;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * A subscription billed once per cycle of its card while the cycle overlaps [startDate, endDate]
+ * Each cycle gets its own purchase, see RecurringChargeService
+ */
+@Data
+@Entity
+@Table(name = "tb_recurring_charge")
+public class RecurringCharge {
+
+	@Id
+	@Column(name = "recurring_charge_id")
+	@SequenceGenerator(name = "recurring_charge_seq", sequenceName = "seq_recurring_charge", allocationSize = 50)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recurring_charge_seq")
+	private Long recurringChargeId;
+
+	@ToString.Exclude
+	@ManyToOne(optional = false, fetch = FetchType.LAZY)
+	@JoinColumn(name = "card_id", nullable = false)
+	private CreditCard creditCard;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "category_id", nullable = false)
+	private PurchaseCategory category;
+
+	@Column(name = "descricao", length = 255)
+	private String descricao;
+
+	@Column(name = "value", precision = 16, scale = 2, nullable = false)
+	private BigDecimal value;
+
+	// day of the cycle month the charge is dated, clamped to short months
+	@Column(name = "charge_day", nullable = false)
+	private int chargeDay;
+
+	@Column(name = "start_date", nullable = false)
+	private LocalDate startDate;
+
+	// open ended while null
+	@Column(name = "end_date")
+	private LocalDate endDate;
+
+	public RecurringCharge() {
+		super();
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.thukera.creditcard.model.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published when a card, purchase or invoice of a user changes, or the user profile itself
+ * Listeners react after the transaction commits (e.g. panel cache eviction)
+ */
+@Data
+@AllArgsConstructor
+public class CreditDataChangedEvent {
+
+	private Long userId;
+
+}
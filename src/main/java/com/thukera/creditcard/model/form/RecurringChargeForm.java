@@ -0,0 +1,38 @@
+package com.thukera.creditcard.model.form;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.thukera.creditcard.model.entities.RecurringCharge;
+
+import lombok.Data;
+
+@Data
+public class RecurringChargeForm {
+
+	private Long recurringChargeId;
+	private String descricao;
+	private String category;
+	private BigDecimal value;
+	private int chargeDay;
+
+	@JsonFormat(pattern = "dd/MM/yyyy")
+	private LocalDate startDate;
+
+	@JsonFormat(pattern = "dd/MM/yyyy")
+	private LocalDate endDate;
+
+	public static RecurringChargeForm fromEntity(RecurringCharge charge) {
+		RecurringChargeForm form = new RecurringChargeForm();
+		form.setRecurringChargeId(charge.getRecurringChargeId());
+		form.setDescricao(charge.getDescricao());
+		form.setCategory(charge.getCategory().getName());
+		form.setValue(charge.getValue());
+		form.setChargeDay(charge.getChargeDay());
+		form.setStartDate(charge.getStartDate());
+		form.setEndDate(charge.getEndDate());
+		return form;
+	}
+
+}
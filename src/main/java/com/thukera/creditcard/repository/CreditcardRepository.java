@@ -1,11 +1,61 @@
 package com.thukera.creditcard.repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.thukera.creditcard.model.entities.CreditCard;
 
 public interface CreditcardRepository extends JpaRepository<CreditCard, Long> {
 	
-	
+	// Owner scoped lookup - returns the card only when it belongs to the user
+	Optional<CreditCard> findByCardIdAndUserId(Long cardId, Long userId);
+
+	List<CreditCard> findByCardIdInAndUserId(Collection<Long> cardIds, Long userId);
+
+	// Cards with a billing period and fewer than `horizon` invoices from today on, keyset pages by card id
+	@Query("""
+			SELECT c.cardId
+			FROM CreditCard c
+			WHERE c.cardId > :afterCardId
+			  AND c.billingPeriodStart IS NOT NULL AND c.billingPeriodEnd IS NOT NULL AND c.dueDate IS NOT NULL
+			  AND (SELECT COUNT(i) FROM Invoice i WHERE i.creditCard = c AND i.endDate >= :today) < :horizon
+			ORDER BY c.cardId
+			""")
+	List<Long> findCardIdsToProvision(@Param("today") LocalDate today, @Param("horizon") long horizon,
+			@Param("afterCardId") Long afterCardId, Pageable limit);
+
+	// ---------------------------------- USED LIMIT ----------------------------------
+	// used_limit is not written by entity updates : concurrent purchases add to it in place instead of overwriting it
+
+	@Modifying(flushAutomatically = true)
+	@Query("UPDATE CreditCard c SET c.usedLimit = COALESCE(c.usedLimit, 0) + :delta WHERE c.cardId = :cardId")
+	int addToUsedLimit(@Param("cardId") Long cardId, @Param("delta") BigDecimal delta);
+
+	@Modifying(flushAutomatically = true)
+	@Query("UPDATE CreditCard c SET c.usedLimit = :usedLimit WHERE c.cardId = :cardId")
+	int setUsedLimit(@Param("cardId") Long cardId, @Param("usedLimit") BigDecimal usedLimit);
+
+	// Reconciliation - totals of the card's invoices not PAID, summed and written in one statement
+	@Modifying(flushAutomatically = true)
+	@Query("""
+			UPDATE CreditCard c
+			SET c.usedLimit = (SELECT COALESCE(SUM(i.totalAmount), 0) FROM Invoice i
+			                   WHERE i.creditCard.cardId = :cardId
+			                     AND i.status <> com.thukera.creditcard.model.enums.InvoiceStatus.PAID)
+			WHERE c.cardId = :cardId
+			""")
+	int reconcileUsedLimit(@Param("cardId") Long cardId);
+
+	@Query("SELECT c.usedLimit FROM CreditCard c WHERE c.cardId = :cardId")
+	BigDecimal findUsedLimit(@Param("cardId") Long cardId);
 
 }
@@ -0,0 +1,65 @@
+package com.thukera.creditcard.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.thukera.creditcard.model.dto.CategoryTotalRow;
+import com.thukera.creditcard.model.entities.InvoiceCategoryKey;
+import com.thukera.creditcard.model.entities.InvoiceCategorySummary;
+
+@Repository
+public interface InvoiceCategorySummaryRepository extends JpaRepository<InvoiceCategorySummary, InvoiceCategoryKey>, InvoiceCategorySummaryUpsertRepository {
+
+	@Query("""
+			SELECT c.name AS category, s.totalValue AS totalValue, s.paidValue AS paidValue
+			FROM InvoiceCategorySummary s
+			JOIN PurchaseCategory c ON c.purchaseClassId = s.id.categoryId
+			WHERE s.id.invoiceId = :invoiceId AND s.purchaseCount > 0
+			ORDER BY c.name
+			""")
+	List<CategoryTotalRow> findCategoryTotals(@Param("invoiceId") Long invoiceId);
+
+	// Rows of deleted invoices, those still in tb_invoice are kept
+	@Modifying
+	@Query(value = """
+			DELETE FROM tb_invoice_category_summary s
+			WHERE s.invoice_id IN (:invoiceIds)
+			  AND NOT EXISTS (SELECT 1 FROM tb_invoice i WHERE i.invoice_id = s.invoice_id)
+			""", nativeQuery = true)
+	int deleteOrphanSummaries(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+	// ---------------------------------- REBUILD FROM SCRATCH ----------------------------------
+
+	@Modifying
+	@Query(value = "DELETE FROM tb_invoice_category_summary", nativeQuery = true)
+	int deleteAllSummaries();
+
+	@Modifying
+	@Query(value = "DELETE FROM tb_invoice_category_summary WHERE invoice_id = :invoiceId", nativeQuery = true)
+	int deleteSummaries(@Param("invoiceId") Long invoiceId);
+
+	// Same rule as the read path : installment purchases count value * current / total as paid
+	@Modifying
+	@Query(value = """
+			INSERT INTO tb_invoice_category_summary (invoice_id, category_id, total_value, paid_value, purchase_count)
+			SELECT ip.invoice_id, p.tb_purchase_category,
+			       SUM(p.value),
+			       SUM(CASE WHEN inst.installment_id IS NULL THEN p.value
+			                ELSE ROUND(p.value * inst.installment_number / inst.installment_total, 2) END),
+			       COUNT(*)
+			FROM tb_invoice_purchase ip
+			JOIN tb_credit_purchase p ON p.purchase_id = ip.purchase_id
+			LEFT JOIN tb_installment inst ON inst.credit_purchase_id = p.purchase_id AND inst.invoice_id = ip.invoice_id
+			WHERE p.tb_purchase_category IS NOT NULL
+			  AND (CAST(:invoiceId AS BIGINT) IS NULL OR ip.invoice_id = :invoiceId)
+			GROUP BY ip.invoice_id, p.tb_purchase_category
+			""", nativeQuery = true)
+	int insertSummaries(@Param("invoiceId") Long invoiceId);
+
+}
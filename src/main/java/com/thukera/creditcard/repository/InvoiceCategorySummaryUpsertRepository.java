@@ -0,0 +1,21 @@
+package com.thukera.creditcard.repository;
+
+import java.math.BigDecimal;
+
+import com.thukera.creditcard.model.entities.InvoiceCategoryKey;
+
+/**
+ * Writes tb_invoice_category_summary deltas directly, as part of InvoiceCategorySummaryRepository
+ * Insert and add are one MERGE statement (PostgreSQL 15+) : a transaction adding to a row another one just
+ * created lands on it instead of failing on the primary key. Two transactions creating the very same row at
+ * once can still collide on PostgreSQL, the second one then fails and is rolled back
+ */
+public interface InvoiceCategorySummaryUpsertRepository {
+
+	/**
+	 * Add a delta to the (invoice, category) row, creating it with the delta when absent
+	 * @return number of rows written
+	 */
+	int upsertDelta(InvoiceCategoryKey id, BigDecimal totalDelta, BigDecimal paidDelta, int countDelta);
+
+}
@@ -0,0 +1,33 @@
+package com.thukera.creditcard.repository;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.thukera.creditcard.model.entities.InvoiceCategoryKey;
+
+class InvoiceCategorySummaryUpsertRepositoryImpl implements InvoiceCategorySummaryUpsertRepository {
+
+	// standard MERGE, the same statement on PostgreSQL 15+ and on H2 (tests)
+	private static final String UPSERT = """
+			MERGE INTO tb_invoice_category_summary s
+			USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS NUMERIC(16, 2)), CAST(? AS NUMERIC(16, 2)), CAST(? AS INTEGER)))
+			      AS d (invoice_id, category_id, total_value, paid_value, purchase_count)
+			ON s.invoice_id = d.invoice_id AND s.category_id = d.category_id
+			WHEN MATCHED THEN UPDATE
+			SET total_value = s.total_value + d.total_value,
+			    paid_value = s.paid_value + d.paid_value,
+			    purchase_count = s.purchase_count + d.purchase_count
+			WHEN NOT MATCHED THEN INSERT (invoice_id, category_id, total_value, paid_value, purchase_count)
+			VALUES (d.invoice_id, d.category_id, d.total_value, d.paid_value, d.purchase_count)
+			""";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public int upsertDelta(InvoiceCategoryKey id, BigDecimal totalDelta, BigDecimal paidDelta, int countDelta) {
+		return jdbcTemplate.update(UPSERT, id.getInvoiceId(), id.getCategoryId(), totalDelta, paidDelta, countDelta);
+	}
+}
@@ -0,0 +1,23 @@
+package com.thukera.creditcard.repository;
+
+import java.util.List;
+
+import com.thukera.creditcard.model.entities.Invoice;
+
+/**
+ * Inserts billing cycle invoices directly, as part of InvoiceRepository
+ * tb_invoice is unique on (card_id, start_date, end_date) : a cycle another transaction already
+ * created is skipped instead of failing the whole transaction, callers read the cycles back after
+ */
+public interface InvoiceCycleRepository {
+
+	/**
+	 * Insert the invoices whose cycle the card does not have yet, one id per row taken from invoice_seq
+	 * (increment 1); a row skipped on conflict still consumes its id
+	 * Blocks on a cycle another transaction is inserting until it commits or rolls back
+	 * @param invoices new invoices, not persisted
+	 * @return number of rows inserted, cycles skipped on conflict left out
+	 */
+	int insertCyclesIfAbsent(List<Invoice> invoices);
+
+}
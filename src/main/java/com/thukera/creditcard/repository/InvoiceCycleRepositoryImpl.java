@@ -0,0 +1,35 @@
+package com.thukera.creditcard.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.thukera.creditcard.model.entities.Invoice;
+
+class InvoiceCycleRepositoryImpl implements InvoiceCycleRepository {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public int insertCyclesIfAbsent(List<Invoice> invoices) {
+		List<Object[]> rows = new ArrayList<>(invoices.size());
+		for (Invoice invoice : invoices) {
+			rows.add(new Object[] { invoice.getCreditCard().getCardId(), invoice.getStartDate(), invoice.getEndDate(),
+					invoice.getDueDate(), invoice.getStatus().name(), invoice.getTotalAmount(), invoice.getEstimateLimit() });
+		}
+		int[] counts = jdbcTemplate.batchUpdate("""
+				INSERT INTO tb_invoice (invoice_id, card_id, start_date, end_date, due_date, status, total_amount, estimate_limit)
+				VALUES (nextval('invoice_seq'), ?, ?, ?, ?, ?, ?, ?)
+				ON CONFLICT DO NOTHING
+				""", rows);
+		int inserted = 0;
+		for (int count : counts) {
+			// 0 when the cycle already existed
+			inserted += Math.max(count, 0);
+		}
+		return inserted;
+	}
+}
@@ -0,0 +1,11 @@
+package com.thukera.creditcard.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.thukera.creditcard.model.entities.InvoiceLifecycleRun;
+
+@Repository
+public interface InvoiceLifecycleRunRepository extends JpaRepository<InvoiceLifecycleRun, Long> {
+
+}
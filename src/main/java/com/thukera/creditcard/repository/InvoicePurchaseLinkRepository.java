@@ -0,0 +1,33 @@
+package com.thukera.creditcard.repository;
+
+import java.util.List;
+
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Invoice;
+
+/**
+ * Writes tb_invoice_purchase rows directly, as part of InvoiceRepository
+ * Adding to Invoice.purchases loads every purchase already on the invoice first; bulk writes link
+ * new purchases without touching that collection. The purchases must be flushed before.
+ */
+public interface InvoicePurchaseLinkRepository {
+
+	/**
+	 * Link each purchase to the invoices in its invoices list
+	 * @return number of rows written
+	 */
+	int insertLinks(List<CreditPurchase> purchases);
+
+	/**
+	 * Link one purchase to the given invoices only, the links it already has are left as they are
+	 * @return number of rows written
+	 */
+	int insertLinks(CreditPurchase purchase, List<Invoice> invoices);
+
+	/**
+	 * Unlink one purchase from the given invoices, its other links are left as they are
+	 * @return number of rows deleted
+	 */
+	int deleteLinks(CreditPurchase purchase, List<Invoice> invoices);
+
+}
@@ -0,0 +1,54 @@
+package com.thukera.creditcard.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Invoice;
+
+class InvoicePurchaseLinkRepositoryImpl implements InvoicePurchaseLinkRepository {
+
+	private static final int BATCH_SIZE = 500;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public int insertLinks(List<CreditPurchase> purchases) {
+		List<Object[]> rows = new ArrayList<>();
+		for (CreditPurchase purchase : purchases) {
+			for (Invoice invoice : purchase.getInvoices()) {
+				rows.add(new Object[] { invoice.getInvoiceId(), purchase.getPurchaseId() });
+			}
+		}
+		return batch("INSERT INTO tb_invoice_purchase (invoice_id, purchase_id) VALUES (?, ?)", rows);
+	}
+
+	@Override
+	public int insertLinks(CreditPurchase purchase, List<Invoice> invoices) {
+		return batch("INSERT INTO tb_invoice_purchase (invoice_id, purchase_id) VALUES (?, ?)", rows(purchase, invoices));
+	}
+
+	@Override
+	public int deleteLinks(CreditPurchase purchase, List<Invoice> invoices) {
+		return batch("DELETE FROM tb_invoice_purchase WHERE invoice_id = ? AND purchase_id = ?", rows(purchase, invoices));
+	}
+
+	private static List<Object[]> rows(CreditPurchase purchase, List<Invoice> invoices) {
+		List<Object[]> rows = new ArrayList<>(invoices.size());
+		for (Invoice invoice : invoices) {
+			rows.add(new Object[] { invoice.getInvoiceId(), purchase.getPurchaseId() });
+		}
+		return rows;
+	}
+
+	private int batch(String sql, List<Object[]> rows) {
+		for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+			jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+		}
+		return rows.size();
+	}
+}
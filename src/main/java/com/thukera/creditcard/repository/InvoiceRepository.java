@@ -1,25 +1,139 @@
 package com.thukera.creditcard.repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
+import com.thukera.creditcard.model.dto.InvoiceExportRow;
+import com.thukera.creditcard.model.dto.InvoiceLine;
+import com.thukera.creditcard.model.dto.InvoiceTotalRow;
 import com.thukera.creditcard.model.entities.CreditCard;
 import com.thukera.creditcard.model.entities.Invoice;
-import com.thukera.creditcard.model.enums.InvoiceStatus;
 
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface InvoiceRepository extends JpaRepository<Invoice, Long>, InvoicePurchaseLinkRepository, InvoiceCycleRepository {
+
+	// Owner scoped lookup - invoice and its card in one query, only when the card belongs to the user
+	@Query("SELECT i FROM Invoice i JOIN FETCH i.creditCard c WHERE i.invoiceId = :invoiceId AND c.user.id = :userId")
+	Optional<Invoice> findByIdAndOwner(@Param("invoiceId") Long invoiceId, @Param("userId") Long userId);
+
+	@Query("SELECT i FROM Invoice i JOIN FETCH i.creditCard WHERE i.invoiceId = :invoiceId")
+	Optional<Invoice> findWithCardById(@Param("invoiceId") Long invoiceId);
+
+	// Invoice lines - each purchase with its category and the installment billed on this invoice, keyed on invoice_id
+	@Query("""
+			SELECT p AS purchase, inst AS installment
+			FROM Invoice i
+			JOIN i.purchases p
+			LEFT JOIN FETCH p.category
+			LEFT JOIN Installment inst ON inst.purchase = p AND inst.invoice = i
+			WHERE i.invoiceId = :invoiceId
+			ORDER BY p.purchaseId
+			""")
+	List<InvoiceLine> findLinesByInvoiceId(@Param("invoiceId") Long invoiceId);
+
+	// Keyset pages of invoice lines - ordered by (purchaseDateTime, purchaseId), page size from the Pageable
+	@Query("""
+			SELECT p AS purchase, inst AS installment
+			FROM Invoice i
+			JOIN i.purchases p
+			LEFT JOIN FETCH p.category
+			LEFT JOIN Installment inst ON inst.purchase = p AND inst.invoice = i
+			WHERE i.invoiceId = :invoiceId
+			ORDER BY p.purchaseDateTime, p.purchaseId
+			""")
+	List<InvoiceLine> findFirstLinesPage(@Param("invoiceId") Long invoiceId, Pageable page);
+
+	@Query("""
+			SELECT p AS purchase, inst AS installment
+			FROM Invoice i
+			JOIN i.purchases p
+			LEFT JOIN FETCH p.category
+			LEFT JOIN Installment inst ON inst.purchase = p AND inst.invoice = i
+			WHERE i.invoiceId = :invoiceId
+			  AND (p.purchaseDateTime > :afterDateTime
+			       OR (p.purchaseDateTime = :afterDateTime AND p.purchaseId > :afterPurchaseId))
+			ORDER BY p.purchaseDateTime, p.purchaseId
+			""")
+	List<InvoiceLine> findLinesPageAfter(@Param("invoiceId") Long invoiceId,
+			@Param("afterDateTime") LocalDateTime afterDateTime,
+			@Param("afterPurchaseId") Long afterPurchaseId, Pageable page);
+
+	// Export streams - scalar rows read forward only, nothing kept in the persistence context
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+	@Query("""
+			SELECT c.cardId AS cardId, c.nickname AS nickname,
+			       i.invoiceId AS invoiceId, i.startDate AS startDate, i.endDate AS endDate, i.dueDate AS dueDate,
+			       i.status AS status, i.totalAmount AS totalAmount, i.estimateLimit AS estimateLimit,
+			       p.purchaseId AS purchaseId, p.descricao AS descricao, p.value AS purchaseValue,
+			       p.purchaseDateTime AS purchaseDateTime, cat.name AS category,
+			       inst.installmentId AS installmentId, inst.currentInstallment AS currentInstallment,
+			       inst.totalInstallment AS totalInstallment, inst.value AS installmentValue
+			FROM Invoice i
+			JOIN i.creditCard c
+			LEFT JOIN i.purchases p
+			LEFT JOIN p.category cat
+			LEFT JOIN Installment inst ON inst.purchase = p AND inst.invoice = i
+			WHERE c.cardId = :cardId
+			ORDER BY i.startDate, i.invoiceId, p.purchaseDateTime, p.purchaseId
+			""")
+	Stream<InvoiceExportRow> streamCardExport(@Param("cardId") Long cardId);
 
-	Optional<Invoice> findByCreditCardAndStatus(CreditCard creditCard, InvoiceStatus status);
+	@QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+			@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+	@Query("""
+			SELECT c.cardId AS cardId, c.nickname AS nickname,
+			       i.invoiceId AS invoiceId, i.startDate AS startDate, i.endDate AS endDate, i.dueDate AS dueDate,
+			       i.status AS status, i.totalAmount AS totalAmount, i.estimateLimit AS estimateLimit,
+			       p.purchaseId AS purchaseId, p.descricao AS descricao, p.value AS purchaseValue,
+			       p.purchaseDateTime AS purchaseDateTime, cat.name AS category,
+			       inst.installmentId AS installmentId, inst.currentInstallment AS currentInstallment,
+			       inst.totalInstallment AS totalInstallment, inst.value AS installmentValue
+			FROM Invoice i
+			JOIN i.creditCard c
+			LEFT JOIN i.purchases p
+			LEFT JOIN p.category cat
+			LEFT JOIN Installment inst ON inst.purchase = p AND inst.invoice = i
+			WHERE i.invoiceId = :invoiceId
+			ORDER BY p.purchaseDateTime, p.purchaseId
+			""")
+	Stream<InvoiceExportRow> streamInvoiceExport(@Param("invoiceId") Long invoiceId);
 
-	Optional<Invoice> findFirstByCreditCardAndStatusOrderByStartDateAsc(CreditCard creditCard, InvoiceStatus pending);
+	// Card invoice window - last closed cycles before today and current/next cycles from today
+	@Query("SELECT i FROM Invoice i WHERE i.creditCard.cardId = :cardId AND i.endDate < :today ORDER BY i.endDate DESC")
+	List<Invoice> findPreviousInvoices(@Param("cardId") Long cardId, @Param("today") LocalDate today, Pageable limit);
 
-	Optional<Invoice> findByCreditCardAndStartDateAndEndDate(CreditCard card, LocalDate startDate, LocalDate endDate);
+	@Query("SELECT i FROM Invoice i WHERE i.creditCard.cardId = :cardId AND i.endDate >= :today ORDER BY i.startDate ASC")
+	List<Invoice> findUpcomingInvoices(@Param("cardId") Long cardId, @Param("today") LocalDate today, Pageable limit);
+
+	// Card invoice history, newest first
+	Slice<Invoice> findByCreditCardCardIdOrderByStartDateDesc(Long cardId, Pageable page);
+
+	// Invoice whose cycle covers the date, latest start first should cycles ever overlap
+	@Query("SELECT i FROM Invoice i WHERE i.creditCard = :card AND i.startDate <= :date AND i.endDate >= :date ORDER BY i.startDate DESC")
+	List<Invoice> findCoveringInvoices(@Param("card") CreditCard card, @Param("date") LocalDate date, Pageable limit);
+
+	// Every invoice of the card starting inside [from, to] - resolves a whole installment plan at once
+	@Query("SELECT i FROM Invoice i WHERE i.creditCard = :card AND i.startDate BETWEEN :from AND :to ORDER BY i.startDate")
+	List<Invoice> findByCreditCardAndStartDateRange(@Param("card") CreditCard card, @Param("from") LocalDate from,
+			@Param("to") LocalDate to);
 
 	@Query(value = """
 			SELECT i.*
@@ -41,4 +155,90 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
 	Optional<Long> findTargetInvoiceId(@Param("creditCardId") Long creditCardId,
 			@Param("targetDate") LocalDate targetDate);
 
+	// ---------------------------------- PROVISIONING ----------------------------------
+	// Cycles stocked ahead with the card's billing days - see InvoiceProvisioningService
+
+	// PENDING invoices of the card nothing was billed on yet : no purchase link, no installment
+	@Query("""
+			SELECT i
+			FROM Invoice i
+			WHERE i.creditCard = :card
+			  AND i.status = com.thukera.creditcard.model.enums.InvoiceStatus.PENDING
+			  AND i.purchases IS EMPTY
+			  AND NOT EXISTS (SELECT inst FROM Installment inst WHERE inst.invoice = i)
+			""")
+	List<Invoice> findEmptyPendingInvoices(@Param("card") CreditCard card);
+
+	// Same guard again at delete time : an invoice a purchase was billed on meanwhile is kept
+	@Modifying(flushAutomatically = true)
+	@Query(value = """
+			DELETE FROM tb_invoice i
+			WHERE i.invoice_id IN (:invoiceIds)
+			  AND i.status = 'PENDING'
+			  AND NOT EXISTS (SELECT 1 FROM tb_invoice_purchase ip WHERE ip.invoice_id = i.invoice_id)
+			  AND NOT EXISTS (SELECT 1 FROM tb_installment inst WHERE inst.invoice_id = i.invoice_id)
+			""", nativeQuery = true)
+	int deleteEmptyPendingInvoices(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+	// ---------------------------------- TOTAL AMOUNT ----------------------------------
+	// total_amount is not written by entity updates : concurrent purchases add to it in place instead of overwriting it
+
+	@Modifying(flushAutomatically = true)
+	@Query("UPDATE Invoice i SET i.totalAmount = COALESCE(i.totalAmount, 0) + :delta WHERE i.invoiceId = :invoiceId")
+	int addToTotalAmount(@Param("invoiceId") Long invoiceId, @Param("delta") BigDecimal delta);
+
+	// Recompute from the billed lines - installment amount on installment plans, purchase value otherwise,
+	// one aggregate statement for the whole set
+	@Modifying(flushAutomatically = true)
+	@Query(value = """
+			UPDATE tb_invoice i
+			SET total_amount = (
+			    SELECT COALESCE(SUM(COALESCE(inst.amount, p.value)), 0)
+			    FROM tb_invoice_purchase ip
+			    JOIN tb_credit_purchase p ON p.purchase_id = ip.purchase_id
+			    LEFT JOIN tb_installment inst ON inst.credit_purchase_id = p.purchase_id AND inst.invoice_id = ip.invoice_id
+			    WHERE ip.invoice_id = i.invoice_id)
+			WHERE i.card_id = :cardId
+			  AND i.invoice_id IN (:invoiceIds)
+			""", nativeQuery = true)
+	int recomputeTotalAmounts(@Param("cardId") Long cardId, @Param("invoiceIds") Collection<Long> invoiceIds);
+
+	@Query("SELECT i.invoiceId AS invoiceId, i.totalAmount AS totalAmount, i.status AS status FROM Invoice i WHERE i.invoiceId IN :invoiceIds")
+	List<InvoiceTotalRow> findTotalAmounts(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+	// ---------------------------------- LIFECYCLE ----------------------------------
+	// Status moves of every card at once, keyed by date and status - see InvoiceLifecycleService
+
+	@Query("""
+			SELECT DISTINCT i.creditCard.user.id
+			FROM Invoice i
+			WHERE (i.status IN (com.thukera.creditcard.model.enums.InvoiceStatus.OPEN, com.thukera.creditcard.model.enums.InvoiceStatus.PENDING)
+			       AND i.endDate < :today)
+			   OR (i.status = com.thukera.creditcard.model.enums.InvoiceStatus.PENDING AND i.startDate <= :today)
+			""")
+	List<Long> findUsersWithLifecycleChanges(@Param("today") LocalDate today);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("""
+			UPDATE Invoice i
+			SET i.status = com.thukera.creditcard.model.enums.InvoiceStatus.CLOSED
+			WHERE i.status IN (com.thukera.creditcard.model.enums.InvoiceStatus.OPEN, com.thukera.creditcard.model.enums.InvoiceStatus.PENDING)
+			  AND i.endDate < :today
+			""")
+	int closeEndedCycles(@Param("today") LocalDate today);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("""
+			UPDATE Invoice i
+			SET i.status = com.thukera.creditcard.model.enums.InvoiceStatus.OPEN
+			WHERE i.status = com.thukera.creditcard.model.enums.InvoiceStatus.PENDING
+			  AND i.startDate <= :today
+			  AND i.endDate >= :today
+			""")
+	int openStartedCycles(@Param("today") LocalDate today);
+
+	// Used limit reconciliation - every invoice of the card not PAID, one aggregate row
+	@Query("SELECT COALESCE(SUM(i.totalAmount), 0) FROM Invoice i WHERE i.creditCard.cardId = :cardId AND i.status <> com.thukera.creditcard.model.enums.InvoiceStatus.PAID")
+	BigDecimal sumUnpaidTotalAmount(@Param("cardId") Long cardId);
+
 }
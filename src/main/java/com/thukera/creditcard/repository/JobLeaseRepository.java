@@ -0,0 +1,36 @@
+package com.thukera.creditcard.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.thukera.creditcard.model.entities.JobLease;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+	// Take the lease when it expired or is already ours - the row lock makes it one winner per expiry
+	@Modifying
+	@Query("""
+			UPDATE JobLease l
+			SET l.owner = :owner, l.lockedUntil = :until
+			WHERE l.jobName = :jobName
+			  AND (l.lockedUntil < :now OR l.owner = :owner)
+			""")
+	int acquire(@Param("jobName") String jobName, @Param("owner") String owner, @Param("now") LocalDateTime now,
+			@Param("until") LocalDateTime until);
+
+	// First run of a job - the primary key lets one instance create the row, the others insert nothing
+	@Modifying
+	@Query(value = """
+			INSERT INTO tb_job_lease (job_name, owner, locked_until)
+			VALUES (:jobName, :owner, :until)
+			ON CONFLICT DO NOTHING
+			""", nativeQuery = true)
+	int insertIfAbsent(@Param("jobName") String jobName, @Param("owner") String owner, @Param("until") LocalDateTime until);
+
+}
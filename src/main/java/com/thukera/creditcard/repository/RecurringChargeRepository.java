@@ -0,0 +1,91 @@
+package com.thukera.creditcard.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.thukera.creditcard.model.dto.CategoryDeltaRow;
+import com.thukera.creditcard.model.entities.RecurringCharge;
+
+@Repository
+public interface RecurringChargeRepository extends JpaRepository<RecurringCharge, Long> {
+
+	// Owner scoped lookup - charge and its card in one query, only when the card belongs to the user
+	@Query("SELECT r FROM RecurringCharge r JOIN FETCH r.creditCard c WHERE r.recurringChargeId = :id AND c.user.id = :userId")
+	Optional<RecurringCharge> findByIdAndOwner(@Param("id") Long id, @Param("userId") Long userId);
+
+	@Query("SELECT r FROM RecurringCharge r JOIN FETCH r.category WHERE r.creditCard.cardId = :cardId ORDER BY r.chargeDay, r.recurringChargeId")
+	List<RecurringCharge> findByCardId(@Param("cardId") Long cardId);
+
+	// Any charge of the card active between from and to
+	@Query("""
+			SELECT COUNT(r) > 0
+			FROM RecurringCharge r
+			WHERE r.creditCard.cardId = :cardId
+			  AND r.startDate <= :to
+			  AND (r.endDate IS NULL OR r.endDate >= :from)
+			""")
+	boolean existsActive(@Param("cardId") Long cardId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+	// ---------------------------------- CYCLE MATERIALIZATION ----------------------------------
+	// Purchase ids come from the purchase sequence, a block per row under pooled-lo : ids skipped, never reused
+
+	// One purchase per charge active on the cycle ; charges already billed on the cycle are left out.
+	// NOT EXISTS skips them cheaply, uk_purchase_recurring_cycle settles two transactions billing the same
+	// cycle at once : the row of the later one is dropped. No conflict target, H2 (tests) only accepts it bare
+	// and the purchase id from nextval cannot conflict
+	@Modifying
+	@Query(value = """
+			INSERT INTO tb_credit_purchase (purchase_id, descricao, has_installments, tb_purchase_category, value,
+			                                purchase_date_time, card_id, recurring_charge_id, recurring_cycle_start)
+			SELECT nextval('seq_purchase'), rc.descricao, false, rc.category_id, rc.value,
+			       CAST(:monthStart AS TIMESTAMP) + (LEAST(rc.charge_day, :monthLength) - 1) * INTERVAL '1' DAY,
+			       rc.card_id, rc.recurring_charge_id, :cycleStart
+			FROM tb_recurring_charge rc
+			WHERE rc.card_id = :cardId
+			  AND rc.start_date <= :cycleEnd
+			  AND (rc.end_date IS NULL OR rc.end_date >= :cycleStart)
+			  AND NOT EXISTS (
+			        SELECT 1
+			        FROM tb_credit_purchase p
+			        WHERE p.recurring_charge_id = rc.recurring_charge_id
+			          AND p.recurring_cycle_start = :cycleStart
+			  )
+			ON CONFLICT DO NOTHING
+			""", nativeQuery = true)
+	int insertCyclePurchases(@Param("cardId") Long cardId, @Param("cycleStart") LocalDate cycleStart,
+			@Param("cycleEnd") LocalDate cycleEnd, @Param("monthStart") LocalDate monthStart,
+			@Param("monthLength") int monthLength);
+
+	// Recurring purchases of the cycle not billed on an invoice yet, per category
+	@Query(value = """
+			SELECT p.tb_purchase_category AS categoryId, SUM(p.value) AS totalValue, COUNT(*) AS purchaseCount
+			FROM tb_credit_purchase p
+			WHERE p.card_id = :cardId
+			  AND p.recurring_cycle_start = :cycleStart
+			  AND p.recurring_charge_id IS NOT NULL
+			  AND NOT EXISTS (SELECT 1 FROM tb_invoice_purchase ip WHERE ip.purchase_id = p.purchase_id)
+			GROUP BY p.tb_purchase_category
+			""", nativeQuery = true)
+	List<CategoryDeltaRow> findUnbilledCycleTotals(@Param("cardId") Long cardId, @Param("cycleStart") LocalDate cycleStart);
+
+	@Modifying
+	@Query(value = """
+			INSERT INTO tb_invoice_purchase (invoice_id, purchase_id)
+			SELECT :invoiceId, p.purchase_id
+			FROM tb_credit_purchase p
+			WHERE p.card_id = :cardId
+			  AND p.recurring_cycle_start = :cycleStart
+			  AND p.recurring_charge_id IS NOT NULL
+			  AND NOT EXISTS (SELECT 1 FROM tb_invoice_purchase ip WHERE ip.purchase_id = p.purchase_id)
+			""", nativeQuery = true)
+	int linkCyclePurchases(@Param("invoiceId") Long invoiceId, @Param("cardId") Long cardId,
+			@Param("cycleStart") LocalDate cycleStart);
+
+}
@@ -0,0 +1,54 @@
+package com.thukera.creditcard.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.thukera.creditcard.model.billing.BillingCalendar;
+import com.thukera.creditcard.model.entities.CreditCard;
+
+/**
+ * Keeps the billing calendar of each card in memory
+ * Entries are dropped when the card's billing days change
+ */
+@Service
+public class BillingCalendarService {
+
+	private static final Logger logger = LogManager.getLogger(BillingCalendarService.class);
+
+	private final Cache<Long, BillingCalendar> calendars = Caffeine.newBuilder()
+			.maximumSize(10_000)
+			.build();
+
+	/**
+	 * Get the billing calendar of a card
+	 * @param card the credit card
+	 * @return BillingCalendar for the card's current billing days
+	 * @throws IllegalArgumentException if the card has no billing period configured
+	 */
+	public BillingCalendar forCard(CreditCard card) {
+		if (card.getCardId() == null) {
+			return BillingCalendar.of(card);
+		}
+		BillingCalendar calendar = calendars.get(card.getCardId(), id -> BillingCalendar.of(card));
+		// card changed in a transaction that has not evicted it yet
+		if (!calendar.matches(card)) {
+			calendar = BillingCalendar.of(card);
+			calendars.put(card.getCardId(), calendar);
+		}
+		return calendar;
+	}
+
+	/**
+	 * Drop the cached calendar of a card
+	 * @param cardId the card ID
+	 */
+	public void invalidate(Long cardId) {
+		if (cardId != null) {
+			logger.debug("### Invalidating billing calendar of card: {}", cardId);
+			calendars.invalidate(cardId);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.thukera.creditcard.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-process locks striped by card id : writers creating invoices of the same card take turns,
+ * writers of other cards only meet when they share a stripe. Instances are kept apart by the
+ * unique cycle key on tb_invoice, these locks only spare same instance writers the wait on it
+ */
+@Component
+public class CardLocks {
+
+	private static final Logger logger = LogManager.getLogger(CardLocks.class);
+
+	@Value("${my.finances.app.cardLockStripes:64}")
+	private int stripes;
+
+	@Value("${my.finances.app.cardLockTimeout:10}")
+	private long timeoutSeconds;
+
+	private ReentrantLock[] locks;
+
+	@PostConstruct
+	void init() {
+		locks = new ReentrantLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Lock the stripe of a card until the current transaction completes, so the next writer sees what this one committed
+	 * Reentrant : a transaction may lock the same card again
+	 * @param cardId the card ID
+	 * @throws IllegalStateException if no transaction is active, or the stripe is still held after the timeout
+	 *         (two transactions locking cards in opposite order give way here)
+	 */
+	public void lockUntilCompletion(Long cardId) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Card lock requires an active transaction");
+		}
+		ReentrantLock lock = locks[Math.floorMod(Long.hashCode(cardId), locks.length)];
+		try {
+			if (!lock.tryLock(timeoutSeconds, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Credit card " + cardId + " is busy, try again");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while locking credit card " + cardId, e);
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				lock.unlock();
+			}
+		});
+		logger.debug("### Card {} locked (hold count {})", cardId, lock.getHoldCount());
+	}
+}
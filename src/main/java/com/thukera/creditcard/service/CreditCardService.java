@@ -1,17 +1,39 @@
 package com.thukera.creditcard.service;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.dto.InvoiceDTOFromCreditCard;
+import com.thukera.creditcard.model.dto.InvoicePageDTO;
 import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.PurchaseCategory;
+import com.thukera.creditcard.model.entities.RecurringCharge;
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
 import com.thukera.creditcard.model.form.CreditCardForm;
+import com.thukera.creditcard.model.form.RecurringChargeForm;
 import com.thukera.creditcard.repository.CreditcardRepository;
+import com.thukera.creditcard.repository.InvoiceRepository;
+import com.thukera.creditcard.repository.PurchaseCategoryRepository;
+import com.thukera.creditcard.repository.RecurringChargeRepository;
 import com.thukera.root.model.messages.NotFoundException;
 import com.thukera.user.model.entities.User;
 import com.thukera.user.service.AuthenticationHelper;
@@ -25,6 +47,8 @@ public class CreditCardService {
 
     private static final Logger logger = LogManager.getLogger(CreditCardService.class);
 
+    private static final int MAX_INVOICE_PAGE_SIZE = 50;
+
     @Autowired
     private CreditcardRepository creditcardRepository;
 
@@ -34,6 +58,31 @@ public class CreditCardService {
     @Autowired
     private AuthenticationHelper authHelper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private BillingCalendarService billingCalendarService;
+
+    @Autowired
+    private InvoiceProvisioningService invoiceProvisioningService;
+
+    @Autowired
+    private RecurringChargeRepository recurringChargeRepository;
+
+    @Autowired
+    private PurchaseCategoryRepository purchaseCategoryRepository;
+
+    // invoice window of the card detail : closed cycles before today, and cycles after the current one
+    @Value("${my.finances.app.cardPreviousInvoices:1}")
+    private int previousInvoices;
+
+    @Value("${my.finances.app.cardUpcomingInvoices:3}")
+    private int upcomingInvoices;
+
     /**
      * Create a new credit card for the current user
      * @param form the credit card form data
@@ -43,16 +92,18 @@ public class CreditCardService {
     public CreditCardForm createCreditCard(CreditCardForm form) {
         logger.debug("### Creating credit card: {}", form);
 
-        User currentUser = authHelper.getCurrentUser();
-        logger.debug("### User: {}", currentUser.getUsername());
+        User currentUser = authHelper.getCurrentUserReference();
+        logger.debug("### User: {}", currentUser.getId());
 
         CreditCard card = creditCardMapper.toEntity(form, currentUser);
         logger.debug("### CreditCard entity created: {}", card);
 
         CreditCard savedCard = creditcardRepository.save(card);
         logger.debug("### CreditCard saved with ID: {}", savedCard.getCardId());
+        publishChange(savedCard);
 
-        return creditCardMapper.toForm(savedCard);
+        // a new card has no invoices yet
+        return creditCardMapper.toForm(savedCard, List.of());
     }
 
     /**
@@ -60,44 +111,53 @@ public class CreditCardService {
      * Validates ownership before returning
      * @param cardId the card ID
      * @return CreditCardForm
-     * @throws NotFoundException if card not found
-     * @throws SecurityException if user doesn't own the card
+     * @throws NotFoundException if card not found or not owned by the user
      */
     @Transactional(readOnly = true)
     public CreditCardForm getCreditCardById(Long cardId) {
         logger.debug("### Fetching credit card with ID: {}", cardId);
 
-        CreditCard card = creditcardRepository.findById(cardId)
-                .orElseThrow(() -> new NotFoundException("Cartão não encontrado"));
+        CreditCard card = findOwnedCard(cardId);
 
-        validateCardOwnership(card);
-
-        return creditCardMapper.toForm(card);
+        return toSummaryForm(card);
     }
 
     /**
      * Get credit card entity by ID with ownership validation
      * @param cardId the card ID
      * @return CreditCard entity
-     * @throws NotFoundException if card not found
-     * @throws SecurityException if user doesn't own the card
+     * @throws NotFoundException if card not found or not owned by the user
      */
     @Transactional(readOnly = true)
     public CreditCard getCreditCardEntityById(Long cardId) {
         logger.debug("### Fetching credit card entity with ID: {}", cardId);
 
-        CreditCard card = creditcardRepository.findById(cardId)
-                .orElseThrow(() -> new NotFoundException("Cartão não encontrado"));
+        return findOwnedCard(cardId);
+    }
 
-        validateCardOwnership(card);
+    /**
+     * Get the cards among cardIds owned by the current user, in one query
+     * Cards not found or not owned are left out instead of failing
+     * @param cardIds the card IDs
+     * @return cards by ID
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, CreditCard> getOwnedCardEntities(Collection<Long> cardIds) {
+        logger.debug("### Fetching credit card entities: {}", cardIds);
 
-        return card;
+        List<CreditCard> cards = authHelper.isCurrentUserAdmin()
+                ? creditcardRepository.findAllById(cardIds)
+                : creditcardRepository.findByCardIdInAndUserId(cardIds, authHelper.getCurrentUserId());
+        return cards.stream().collect(Collectors.toMap(CreditCard::getCardId, Function.identity()));
     }
 
     @Transactional
     public void updateCreditCard(CreditCard card) {
         logger.debug("### Updating credit card: {}", card.getCardId());
         creditcardRepository.save(card);
+        billingCalendarService.invalidate(card.getCardId());
+        invoiceProvisioningService.reprovisionCard(card, LocalDate.now());
+        publishChange(card);
     }
     
     @Transactional
@@ -107,32 +167,183 @@ public class CreditCardService {
           
         CreditCard updatedCard = creditCardMapper.updateEntity(card, form);
         creditcardRepository.save(updatedCard);
+        // billing days may have changed : cycles stocked ahead with the old ones are replaced
+        billingCalendarService.invalidate(updatedCard.getCardId());
+        invoiceProvisioningService.reprovisionCard(updatedCard, LocalDate.now());
 		logger.debug("### CreditCard updated: {}", updatedCard.getCardId());
+		publishChange(updatedCard);
         
-        return creditCardMapper.toForm(updatedCard);
+        return toSummaryForm(updatedCard);
     }
     
+    /**
+     * Reconcile the card's used limit with one aggregate over its invoices not PAID
+     * Purchase writes and status changes keep it exact by deltas (InvoiceTotalsService); this is the fallback
+     * @param card the credit card
+     * @return CreditCardForm
+     */
     @Transactional
     public CreditCardForm updateCreditCardUsedLimit(CreditCard card) {
         logger.debug("### Updating credit card used limit: {}", card.getCardId());
         validateCardOwnership(card);
           
-        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal totalAmount = invoiceRepository.sumUnpaidTotalAmount(card.getCardId());
         
-        for (var invoice : card.getInvoices()) {
-			if (invoice.getStatus() != com.thukera.creditcard.model.enums.InvoiceStatus.PAID || invoice.getStatus() != com.thukera.creditcard.model.enums.InvoiceStatus.OPEN) {
-				totalAmount = totalAmount.add(invoice.getTotalAmount());
-			}
-		}
-        
-        if (totalAmount.compareTo(card.getUsedLimit()) != 0) {
+        if (card.getUsedLimit() == null || totalAmount.compareTo(card.getUsedLimit()) != 0) {
+        	creditcardRepository.setUsedLimit(card.getCardId(), totalAmount);
 			card.setUsedLimit(totalAmount);
-        	creditcardRepository.save(card);
+        	publishChange(card);
         	logger.debug("### Total Amount updated: {}", totalAmount);
 		} else {	
 			logger.debug("### Used Limit ok");
 		}         
-        return creditCardMapper.toForm(card);
+        return toSummaryForm(card);
+    }
+
+    /**
+     * Get one page of the card's invoice history, newest first
+     * @param cardId the card ID
+     * @param page zero based page number
+     * @param size page size, capped
+     * @return InvoicePageDTO
+     * @throws NotFoundException if card not found or not owned by the user
+     */
+    @Transactional(readOnly = true)
+    public InvoicePageDTO getCardInvoices(Long cardId, int page, int size) {
+        logger.debug("### Fetching invoices of card {} - page {} size {}", cardId, page, size);
+
+        CreditCard card = findOwnedCard(cardId);
+        int pageSize = Math.min(Math.max(size, 1), MAX_INVOICE_PAGE_SIZE);
+        Slice<Invoice> invoices = invoiceRepository.findByCreditCardCardIdOrderByStartDateDesc(
+                card.getCardId(), PageRequest.of(Math.max(page, 0), pageSize));
+
+        return new InvoicePageDTO(
+                invoices.getContent().stream().map(InvoiceDTOFromCreditCard::fromEntity).collect(Collectors.toList()),
+                invoices.getNumber(),
+                invoices.getSize(),
+                invoices.hasNext());
+    }
+
+    // ======================================= RECURRING CHARGES =======================================
+
+    /**
+     * Add a recurring charge to a card, billed from the next invoice created on or after its start date
+     * @param cardId the card ID
+     * @param form the charge; start date defaults to today
+     * @return saved RecurringChargeForm
+     * @throws NotFoundException if card not found or not owned by the user
+     * @throws IllegalArgumentException if value, day or category are invalid
+     */
+    @Transactional
+    public RecurringChargeForm createRecurringCharge(Long cardId, RecurringChargeForm form) {
+        logger.debug("### Creating recurring charge on card {}: {}", cardId, form);
+        CreditCard card = findOwnedCard(cardId);
+
+        if (form.getValue() == null || form.getValue().signum() <= 0) {
+            throw new IllegalArgumentException("Valor da assinatura inválido");
+        }
+        if (form.getChargeDay() < 1 || form.getChargeDay() > 31) {
+            throw new IllegalArgumentException("Dia de cobrança inválido");
+        }
+        if (form.getCategory() == null || form.getCategory().isBlank()) {
+            throw new IllegalArgumentException("Categoria é obrigatória");
+        }
+        LocalDate startDate = form.getStartDate() != null ? form.getStartDate() : LocalDate.now();
+        if (form.getEndDate() != null && form.getEndDate().isBefore(startDate)) {
+            throw new IllegalArgumentException("Data final anterior à data inicial");
+        }
+
+        RecurringCharge charge = new RecurringCharge();
+        charge.setCreditCard(card);
+        charge.setCategory(purchaseCategoryRepository.findByName(form.getCategory())
+                .orElseGet(() -> purchaseCategoryRepository.save(new PurchaseCategory(form.getCategory(), false, false))));
+        charge.setDescricao(form.getDescricao());
+        charge.setValue(form.getValue());
+        charge.setChargeDay(form.getChargeDay());
+        charge.setStartDate(startDate);
+        charge.setEndDate(form.getEndDate());
+
+        RecurringCharge saved = recurringChargeRepository.save(charge);
+        logger.debug("### Recurring charge saved with ID: {}", saved.getRecurringChargeId());
+        return RecurringChargeForm.fromEntity(saved);
+    }
+
+    /**
+     * Recurring charges of a card, active or ended
+     * @param cardId the card ID
+     * @throws NotFoundException if card not found or not owned by the user
+     */
+    @Transactional(readOnly = true)
+    public List<RecurringChargeForm> getRecurringCharges(Long cardId) {
+        logger.debug("### Fetching recurring charges of card: {}", cardId);
+        CreditCard card = findOwnedCard(cardId);
+
+        return recurringChargeRepository.findByCardId(card.getCardId()).stream()
+                .map(RecurringChargeForm::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * End a recurring charge - cycles starting after endDate are no longer billed
+     * Purchases already billed are kept
+     * @param chargeId the charge ID
+     * @param endDate last day of the charge, today when null
+     * @throws NotFoundException if charge not found or not owned by the user
+     */
+    @Transactional
+    public RecurringChargeForm endRecurringCharge(Long chargeId, LocalDate endDate) {
+        logger.debug("### Ending recurring charge {} on {}", chargeId, endDate);
+        Optional<RecurringCharge> found = authHelper.isCurrentUserAdmin()
+                ? recurringChargeRepository.findById(chargeId)
+                : recurringChargeRepository.findByIdAndOwner(chargeId, authHelper.getCurrentUserId());
+        RecurringCharge charge = found.orElseThrow(() -> new NotFoundException("Assinatura não encontrada"));
+
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        charge.setEndDate(end.isBefore(charge.getStartDate()) ? charge.getStartDate() : end);
+        return RecurringChargeForm.fromEntity(recurringChargeRepository.save(charge));
+    }
+
+    /**
+     * Card form with a bounded invoice window - previous cycles, current and next N
+     * Size does not grow with card age
+     */
+    private CreditCardForm toSummaryForm(CreditCard card) {
+        LocalDate today = LocalDate.now();
+        List<Invoice> previous = invoiceRepository.findPreviousInvoices(card.getCardId(), today, PageRequest.of(0, previousInvoices));
+        List<Invoice> upcoming = invoiceRepository.findUpcomingInvoices(card.getCardId(), today, PageRequest.of(0, upcomingInvoices + 1));
+
+        List<Invoice> window = new ArrayList<>(previous.size() + upcoming.size());
+        for (int i = previous.size() - 1; i >= 0; i--) {
+            window.add(previous.get(i));
+        }
+        window.addAll(upcoming);
+        logger.debug("### Card {} invoice window: {} invoices", card.getCardId(), window.size());
+
+        return creditCardMapper.toForm(card, window);
+    }
+
+    /**
+     * Load a card in a single owner scoped query
+     * Admins keep the unscoped lookup
+     * @param cardId the card ID
+     * @return CreditCard entity
+     * @throws NotFoundException if card not found or not owned by the user
+     */
+    private CreditCard findOwnedCard(Long cardId) {
+        Optional<CreditCard> card = authHelper.isCurrentUserAdmin()
+                ? creditcardRepository.findById(cardId)
+                : creditcardRepository.findByCardIdAndUserId(cardId, authHelper.getCurrentUserId());
+
+        return card.orElseThrow(() -> new NotFoundException("Cartão não encontrado"));
+    }
+
+    /**
+     * Notify listeners that data of the card owner changed
+     * Consumers act after commit (panel cache eviction)
+     * @param card the changed card
+     */
+    public void publishChange(CreditCard card) {
+        eventPublisher.publishEvent(new CreditDataChangedEvent(card.getUser().getId()));
     }
 
     private void validateCardOwnership(CreditCard card) {
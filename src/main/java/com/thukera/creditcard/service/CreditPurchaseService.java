@@ -2,7 +2,11 @@ package com.thukera.creditcard.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,7 +14,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.thukera.creditcard.model.dto.InvoiceDTO;
+import com.thukera.creditcard.model.dto.PurchaseBatchItemDTO;
+import com.thukera.creditcard.model.dto.PurchaseBatchResultDTO;
 import com.thukera.creditcard.model.dto.PurchaseDTO;
 import com.thukera.creditcard.model.entities.CreditCard;
 import com.thukera.creditcard.model.entities.CreditPurchase;
@@ -29,6 +34,8 @@ public class CreditPurchaseService {
 
     private static final Logger logger = LogManager.getLogger(CreditPurchaseService.class);
 
+    static final int MAX_BATCH_SIZE = 500;
+
     @Autowired
     private CreditPurchaseRepository purchaseRepository;
 
@@ -38,12 +45,18 @@ public class CreditPurchaseService {
     @Autowired
     private CreditTransactionService invoiceService;
 
+    @Autowired
+    private InvoiceSummaryService invoiceSummaryService;
+
+    @Autowired
+    private InvoiceTotalsService invoiceTotalsService;
+
     @Autowired
     private AuthenticationHelper authHelper;
 
     /**
      * Create a new purchase and add it to appropriate invoice(s)
-     * Updates the credit card's used limit
+     * Invoice totals and the credit card's used limit move by the purchase value
      * @param purchaseForm the purchase form data
      * @return PurchaseDTO
      */
@@ -59,107 +72,134 @@ public class CreditPurchaseService {
         CreditPurchase newPurchase = invoiceService.createPurchase(purchaseForm, creditCard);
         logger.debug("### Purchase created: {}", newPurchase.getPurchaseId());
 
-        // Update credit card's used limit
-        creditCard.setUsedLimit(creditCard.getUsedLimit().add(newPurchase.getValue()));
-        creditCardService.updateCreditCard(creditCard);
-
         return PurchaseDTO.fromEntity(newPurchase);
     }
 
+    /**
+     * Create a batch of purchases in one transaction
+     * Items are grouped by card : each card's invoices are resolved once and its totals incremented once
+     * Invalid items and items on cards the user does not own are rejected, the others are created
+     * @param purchaseForms the purchase forms
+     * @return PurchaseBatchResultDTO with one result per item, in request order
+     * @throws IllegalArgumentException if the batch is empty or larger than MAX_BATCH_SIZE
+     */
+    @Transactional
+    public PurchaseBatchResultDTO createPurchases(List<CreditPurchaseForm> purchaseForms) {
+        if (purchaseForms == null || purchaseForms.isEmpty() || purchaseForms.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must have between 1 and " + MAX_BATCH_SIZE + " purchases");
+        }
+        logger.debug("### Creating batch of {} purchases", purchaseForms.size());
+
+        // 1. Validate items and group them by card
+        PurchaseBatchItemDTO[] results = new PurchaseBatchItemDTO[purchaseForms.size()];
+        Map<Long, List<Integer>> indexesByCard = new LinkedHashMap<>();
+        for (int i = 0; i < purchaseForms.size(); i++) {
+            String error = validateBatchItem(purchaseForms.get(i));
+            if (error != null) {
+                results[i] = PurchaseBatchItemDTO.rejected(i, error);
+            } else {
+                indexesByCard.computeIfAbsent(purchaseForms.get(i).getCreditCardId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // 2. Cards owned by the user, one query
+        Map<Long, CreditCard> cards = creditCardService.getOwnedCardEntities(indexesByCard.keySet());
+
+        // 3. Create each card's purchases together
+        int created = 0;
+        for (Map.Entry<Long, List<Integer>> group : indexesByCard.entrySet()) {
+            CreditCard creditCard = cards.get(group.getKey());
+            if (creditCard == null) {
+                group.getValue().forEach(i -> results[i] = PurchaseBatchItemDTO.rejected(i, "Cartão não encontrado"));
+                continue;
+            }
+
+            List<CreditPurchase> purchases = invoiceService.createPurchases(
+                    group.getValue().stream().map(purchaseForms::get).toList(), creditCard);
+
+            for (int j = 0; j < purchases.size(); j++) {
+                int index = group.getValue().get(j);
+                results[index] = PurchaseBatchItemDTO.created(index, purchases.get(j).getPurchaseId());
+            }
+            created += purchases.size();
+            logger.debug("### {} purchases created on card {}", purchases.size(), creditCard.getCardId());
+        }
+
+        return new PurchaseBatchResultDTO(created, purchaseForms.size() - created, Arrays.asList(results));
+    }
+
     /**
      * Delete a purchase and clean up all related data
      * - Removes purchase from all related invoices
      * - Removes all installments from their invoices
-     * - Updates invoice totals
-     * - Updates credit card's used limit
+     * - Takes its values off invoice totals and the credit card's used limit
      * - Deletes the purchase
      * @param purchaseId the purchase ID to delete
      * @return true if deleted successfully
-     * @throws NotFoundException if purchase not found or has no invoice
-     * @throws SecurityException if user doesn't own the purchase
+     * @throws NotFoundException if purchase not found or not owned by the user
      */
     @Transactional
     public void deletePurchase(Long purchaseId) {
         logger.debug("### Deleting purchase with ID: {}", purchaseId);
 
-        // 1. Find and validate purchase
-        CreditPurchase purchase = purchaseRepository.findById(purchaseId)
-                .orElseThrow(() -> new NotFoundException("Purchase not found"));
-     
-        // Get first invoice to check ownership
-        Invoice firstInvoice = purchase.getInvoices().stream().findFirst()
-                .orElseThrow(() -> new NotFoundException("No invoice linked to this purchase"));
-        
-        // Validate ownership through the invoice's credit card
-        Long cardOwnerId = firstInvoice.getCreditCard().getUser().getId();
-        if (!authHelper.canAccessUserResource(cardOwnerId)) {
-            logger.warn("### Unauthorized access attempt to purchase: {}", purchaseId);
-            throw new SecurityException("Não autorizado");
-        }
+        // 1. Find purchase scoped to its owner
+        CreditPurchase purchase = findOwnedPurchase(purchaseId);
         logger.debug("### Purchase ownership validated");
 
         // Get the credit card for later update
-        CreditCard creditCard = firstInvoice.getCreditCard();
+        CreditCard creditCard = purchase.getCreditCard();
         
-        // 2. Collect all affected invoices before deletion
-        List<Invoice> affectedInvoices = new ArrayList<>(purchase.getInvoices());
-        logger.debug("### Purchase is linked to {} invoice(s)", affectedInvoices.size());
+        // 2. Take the purchase out of the totals of its invoices before deletion
+        logger.debug("### Purchase is linked to {} invoice(s)", purchase.getInvoices().size());
+        invoiceSummaryService.removePurchase(purchase);
+        invoiceTotalsService.removePurchases(creditCard, List.of(purchase));
         
-        // 3. Remove purchase from all related invoices (many-to-many relationship cleanup)
+        // 3. Remove purchase from all related invoices, only its own tb_invoice_purchase rows
         logger.debug("### Removing purchase from invoice relationships");
-        for (Invoice invoice : affectedInvoices) {
-            invoice.getPurchases().remove(purchase);
-            logger.debug("### Removed purchase from invoice {}", invoice.getInvoiceId());
-        }
-        
-        // Clear the invoice list from purchase side
-        purchase.getInvoices().clear();
+        invoiceService.unlinkPurchase(purchase);
 
         // 4. Delete the purchase (cascade will handle installments deletion)
         purchaseRepository.delete(purchase);
         logger.debug("### Purchase deleted from database");
 
-        // 5. Update invoice totals (recalculates from remaining purchases/installments)
-        logger.debug("### Recalculating totals for affected invoices");
-        for (Invoice invoice : affectedInvoices) {
-            invoiceService.updateTotalAmount(InvoiceDTO.fromEntity(invoice));
-            logger.debug("### Recalculated total for invoice {}", invoice.getInvoiceId());
-        }
-
-        // 6. Update credit card's used limit
-        creditCardService.updateCreditCardUsedLimit(creditCard);
-        logger.debug("### Credit card used limit updated");
+        creditCardService.publishChange(creditCard);
 
         logger.debug("### Purchase {} successfully deleted", purchaseId);
         
     }
     
     
+    private static String validateBatchItem(CreditPurchaseForm purchaseForm) {
+        if (purchaseForm == null) {
+            return "Purchase is empty";
+        }
+        if (purchaseForm.getCreditCardId() <= 0) {
+            return "Credit card is required";
+        }
+        if (purchaseForm.getValue() == null || purchaseForm.getValue().signum() <= 0) {
+            return "Value must be positive";
+        }
+        if (purchaseForm.getTotalInstallments() < 1) {
+            return "Installments must be at least 1";
+        }
+        if (purchaseForm.getCategory() == null || purchaseForm.getCategory().isBlank()) {
+            return "Category is required";
+        }
+        return null;
+    }
+
     /**
      * Get purchase details by ID
      * Validates that user owns the credit card associated with the purchase
      * @param purchaseId the purchase ID
      * @return PurchaseDTO
-     * @throws NotFoundException if purchase not found or has no invoice
-     * @throws SecurityException if user doesn't own the purchase
+     * @throws NotFoundException if purchase not found or not owned by the user
      */
     @Transactional(readOnly = true)
     public PurchaseDTO getPurchaseById(Long purchaseId) {
         logger.debug("### Fetching purchase with ID: {}", purchaseId);
 
-        CreditPurchase purchase = purchaseRepository.findById(purchaseId)
-                .orElseThrow(() -> new NotFoundException("Purchase not found"));
-
-        // Get first invoice to check ownership
-        Invoice invoice = purchase.getInvoices().stream().findFirst()
-                .orElseThrow(() -> new NotFoundException("No invoice linked to this purchase"));
-
-        // Validate ownership through the invoice's credit card
-        Long cardOwnerId = invoice.getCreditCard().getUser().getId();
-        if (!authHelper.canAccessUserResource(cardOwnerId)) {
-            logger.warn("### Unauthorized access attempt to purchase: {}", purchaseId);
-            throw new SecurityException("Não autorizado");
-        }
+        CreditPurchase purchase = findOwnedPurchase(purchaseId);
 
         logger.debug("### Purchase access authorized");
         PurchaseDTO purchaseDTO = PurchaseDTO.fromEntity(purchase);
@@ -177,39 +217,25 @@ public class CreditPurchaseService {
     /**
      * Update a purchase and recalculate all related data
      * - Updates purchase details (description, value, category)
-     * - Recalculates installments if value or installment count changes
+     * - Adjusts installments in place if value or installment count changes, keeping the billed cycles
      * - Reassigns to different invoices if purchase date changes
-     * - Updates invoice totals
-     * - Updates credit card's used limit
+     * - Moves invoice totals and the credit card's used limit by the old and new values
      * @param purchaseId the purchase ID to update
      * @param purchaseForm the updated purchase data
      * @return PurchaseDTO with updated data
-     * @throws NotFoundException if purchase not found or has no invoice
-     * @throws SecurityException if user doesn't own the purchase
+     * @throws NotFoundException if purchase not found or not owned by the user
      */
     @Transactional
     public PurchaseDTO updatePurchaseById(Long purchaseId, CreditPurchaseForm purchaseForm) {
         logger.debug("### Updating purchase with ID: {}", purchaseId);
         logger.debug("### Update form: {}", purchaseForm);
 
-        // 1. Find and validate purchase
-        CreditPurchase purchase = purchaseRepository.findById(purchaseId)
-                .orElseThrow(() -> new NotFoundException("Purchase not found"));
-     
-        // Get first invoice to check ownership
-        Invoice firstInvoice = purchase.getInvoices().stream().findFirst()
-                .orElseThrow(() -> new NotFoundException("No invoice linked to this purchase"));
-        
-        // Validate ownership through the invoice's credit card
-        Long cardOwnerId = firstInvoice.getCreditCard().getUser().getId();
-        if (!authHelper.canAccessUserResource(cardOwnerId)) {
-            logger.warn("### Unauthorized access attempt to purchase: {}", purchaseId);
-            throw new SecurityException("Não autorizado");
-        }
+        // 1. Find purchase scoped to its owner
+        CreditPurchase purchase = findOwnedPurchase(purchaseId);
         logger.debug("### Purchase ownership validated");
 
         // Get the credit card
-        CreditCard creditCard = firstInvoice.getCreditCard();
+        CreditCard creditCard = purchase.getCreditCard();
         
         // 2. Store old values for comparison
         BigDecimal oldValue = purchase.getValue();
@@ -232,15 +258,28 @@ public class CreditPurchaseService {
                         currentInstallmentCount, newInstallmentCount, valueChanged);
         }
         
-        // 4. If installments changed significantly, we need to recreate the purchase structure
-        if (installmentsChanged) {
+        boolean dateChanged = purchaseForm.getPurchaseDateTime() != null &&
+                              !purchaseForm.getPurchaseDateTime().equals(purchase.getPurchaseDateTime());
+        
+        // 4. Same date : installment plan diffed in place on the invoices it is already billed on
+        if (installmentsChanged && !dateChanged && !oldInvoices.isEmpty()) {
+            logger.debug("### Adjusting installment plan in place");
+            
+            if (purchaseForm.getDescricao() != null) {
+                purchase.setDescricao(purchaseForm.getDescricao());
+            }
+            var category = purchaseForm.getCategory() != null ? invoiceService.findOrCreateCategory(purchaseForm.getCategory()) : null;
+            invoiceService.replanPurchase(purchase, purchaseForm.getValue() != null ? purchaseForm.getValue() : oldValue,
+                    category, newInstallmentCount, creditCard);
+            
+        // 5. New date : the purchase structure is recreated on the cycles of the new date
+        } else if (installmentsChanged) {
             logger.debug("### Recreating purchase with new installment structure");
             
             // Remove from old invoices and clear installments
-            for (Invoice invoice : oldInvoices) {
-                invoice.getPurchases().remove(purchase);
-            }
-            purchase.getInvoices().clear();
+            invoiceSummaryService.removePurchase(purchase);
+            invoiceTotalsService.removePurchases(creditCard, List.of(purchase));
+            invoiceService.unlinkPurchase(purchase);
             purchase.getInstallments().clear();
             
             // Update basic purchase info
@@ -260,27 +299,15 @@ public class CreditPurchaseService {
                 purchase.setCategory(category);
             }
             
-            // Recreate the invoice/installment structure
+            // Recreate the invoice/installment structure, totals added back with the new values
             purchase.setHasInstallments(newInstallmentCount > 1);
             invoiceService.reassignPurchaseToInvoices(purchase, newInstallmentCount, creditCard);
             
             // Save the updated purchase
             purchaseRepository.save(purchase);
             
-            // Update totals for old invoices
-            logger.debug("### Updating old invoice totals");
-            for (Invoice invoice : oldInvoices) {
-                invoiceService.updateTotalAmount(InvoiceDTO.fromEntity(invoice));
-            }
-            
-            // Update totals for new invoices
-            logger.debug("### Updating new invoice totals");
-            for (Invoice invoice : purchase.getInvoices()) {
-                invoiceService.updateTotalAmount(InvoiceDTO.fromEntity(invoice));
-            }
-            
         } else {
-            // 5. Simple update - just description and/or category
+            // 6. Simple update - just description and/or category
             logger.debug("### Simple update - no installment changes");
             
             boolean updated = false;
@@ -294,7 +321,10 @@ public class CreditPurchaseService {
             if (purchaseForm.getCategory() != null) {
                 var category = invoiceService.findOrCreateCategory(purchaseForm.getCategory());
                 if (!category.equals(purchase.getCategory())) {
+                    // category totals move with the purchase
+                    invoiceSummaryService.removePurchase(purchase);
                     purchase.setCategory(category);
+                    invoiceSummaryService.addPurchase(purchase);
                     updated = true;
                     logger.debug("### Updated category");
                 }
@@ -305,11 +335,24 @@ public class CreditPurchaseService {
             }
         }
         
-        // 6. Update credit card's used limit (always recalculate after any change)
-        creditCardService.updateCreditCardUsedLimit(creditCard);
-        logger.debug("### Credit card used limit updated");
+        creditCardService.publishChange(creditCard);
 
         logger.debug("### Purchase {} successfully updated", purchaseId);
         return PurchaseDTO.fromEntity(purchase);
     }
+
+    /**
+     * Load a purchase and its card in a single owner scoped query
+     * Admins keep the unscoped lookup
+     * @param purchaseId the purchase ID
+     * @return CreditPurchase entity
+     * @throws NotFoundException if purchase not found or not owned by the user
+     */
+    private CreditPurchase findOwnedPurchase(Long purchaseId) {
+        Optional<CreditPurchase> purchase = authHelper.isCurrentUserAdmin()
+                ? purchaseRepository.findById(purchaseId)
+                : purchaseRepository.findByIdAndOwner(purchaseId, authHelper.getCurrentUserId());
+
+        return purchase.orElseThrow(() -> new NotFoundException("Purchase not found"));
+    }
 }
@@ -5,26 +5,34 @@ import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import com.thukera.creditcard.model.dto.InvoiceDTO;
-import com.thukera.creditcard.model.dto.PurchaseDTOFromInvoice;
+import com.thukera.creditcard.model.billing.BillingCalendar;
 import com.thukera.creditcard.model.entities.CreditCard;
 import com.thukera.creditcard.model.entities.CreditPurchase;
 import com.thukera.creditcard.model.entities.Installment;
 import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.InvoiceCategoryKey;
 import com.thukera.creditcard.model.entities.PurchaseCategory;
-import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
 import com.thukera.creditcard.model.form.CreditPurchaseForm;
 import com.thukera.creditcard.repository.CreditPurchaseRepository;
 import com.thukera.creditcard.repository.InvoiceRepository;
 import com.thukera.creditcard.repository.PurchaseCategoryRepository;
+import com.thukera.root.model.messages.NotFoundException;
 
 import org.springframework.transaction.annotation.Transactional;
 
@@ -42,6 +50,24 @@ public class CreditTransactionService {
     
     @Autowired
     private PurchaseCategoryRepository purchaseCategoryRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private InvoiceSummaryService invoiceSummaryService;
+
+    @Autowired
+    private BillingCalendarService billingCalendarService;
+
+    @Autowired
+    private RecurringChargeService recurringChargeService;
+
+    @Autowired
+    private InvoiceTotalsService invoiceTotalsService;
+
+    @Autowired
+    private InvoiceProvisioningService invoiceProvisioningService;
   
     // ========================================================== PURCHASES METHODS ==========================================================
     //
@@ -62,6 +88,7 @@ public class CreditTransactionService {
         purchase.setCategory(category);
         purchase.setCreditCard(creditCard);    
         logger.debug("## Purchase Class : {}",purchase.toString());
+        eventPublisher.publishEvent(new CreditDataChangedEvent(creditCard.getUser().getId()));
 
         // check if retroative : 
         boolean retroativePurchase = (purchaseForm.getPurchaseDateTime() != null) ? checkIfRetroative(purchaseForm.getPurchaseDateTime().toLocalDate(),creditCard) : false;
@@ -70,12 +97,11 @@ public class CreditTransactionService {
         // Single installment → add to current invoice
         if (purchaseForm.getTotalInstallments() == 1) {
         	logger.debug("## Single Installment");
-        	Invoice currentInvoice = retroativePurchase ? findOrCreateRetroativeInvoice(creditCard, purchaseForm) : getOrCreateCurrentInvoice(creditCard);
-        	currentInvoice.setTotalAmount(currentInvoice.getTotalAmount().add(purchase.getValue()));
-            currentInvoice.getPurchases().add(purchase);            
+        	Invoice currentInvoice = retroativePurchase ? findOrCreateRetroativeInvoice(creditCard, purchaseForm.getPurchaseDateTime().toLocalDate()) : getOrCreateCurrentInvoice(creditCard);
             purchase.getInvoices().add(currentInvoice);
-            logger.debug("## Invoice : " + currentInvoice.toString());
-            return creditPurchaseRepository.save(purchase);
+            logger.debug("## Invoice : {}", currentInvoice);
+            invoiceSummaryService.addPurchase(purchase);
+            return saveBilledPurchase(purchase);
 
         // For Multiple Installment/Invoices
         } else {
@@ -84,108 +110,140 @@ public class CreditTransactionService {
             BigDecimal installmentValue = purchase.getValue().divide(BigDecimal.valueOf(purchaseForm.getTotalInstallments()), 2, RoundingMode.HALF_UP);                       
             
             // Find or create current invoice
-            Invoice currentInvoice = retroativePurchase ? findOrCreateRetroativeInvoice(creditCard, purchaseForm) : getOrCreateCurrentInvoice(creditCard);
-        	currentInvoice.setTotalAmount(currentInvoice.getTotalAmount().add(installmentValue));
-            currentInvoice.getPurchases().add(purchase);            
+            Invoice currentInvoice = retroativePurchase ? findOrCreateRetroativeInvoice(creditCard, purchaseForm.getPurchaseDateTime().toLocalDate()) : getOrCreateCurrentInvoice(creditCard);
             purchase.getInvoices().add(currentInvoice);
-            logger.debug("## First Invoice : " + currentInvoice.toString());
+            logger.debug("## First Invoice : {}", currentInvoice);
             
             LocalDate baseDate = retroativePurchase ? purchaseForm.getPurchaseDateTime().toLocalDate() : LocalDate.now();
-            LocalDate installmentDate = purchaseForm.getPurchaseDateTime().toLocalDate();
-            
-            // Find or create next Invoices ; generate installments child
-            ArrayList<Invoice> invoiceList = new ArrayList<Invoice>();
-            ArrayList<Installment> installmentList = new ArrayList<Installment>();
             
             // Child Installment Handler
             Installment installment = new Installment(1, purchaseForm.getTotalInstallments(), installmentValue, purchase,currentInvoice);
-            installmentList.add(installment);
-            logger.debug("## First Installment : " + installment.toString());
+            purchase.getInstallments().add(installment);
+            logger.debug("## First Installment : {}", installment);
             
-            for (int i = 1; i < purchaseForm.getTotalInstallments(); i++) {
-	
-            	// Child Invoices Handler - Calculate dates from base date with proper month offset
-                LocalDate dateForNextInvoice = baseDate.plusMonths(i);
-                LocalDate nextStartDate = calculateStartDate(dateForNextInvoice, creditCard.getBillingPeriodStart());
-                LocalDate nextEndDate   = calculateEndDate(dateForNextInvoice, creditCard.getBillingPeriodEnd());
-                LocalDate nextdueDate   = calculateDueDate(dateForNextInvoice, creditCard.getDueDate());
-                installmentDate = installmentDate.plusMonths(1);
-
-                // Check if Retroative Invoice or reach real current
-                Invoice nextInvoice = findOrCreateInvoice(creditCard, nextStartDate, nextEndDate, nextdueDate); 
-                //Invoice nextInvoice = findOrCreateInvoice(creditCard, nextStartDate, nextEndDate, nextdueDate);
-                nextInvoice.setTotalAmount(nextInvoice.getTotalAmount().add(installmentValue));
-                nextInvoice.getPurchases().add(purchase);
-                
-                // check if is necessary according cascate structure
-                invoiceRepository.save(nextInvoice);
-                logger.debug("## Invoice " + i + " : " + nextInvoice.toString());
-                invoiceList.add(nextInvoice);
-  	
-                // Child Installment Handler
-                Installment nextInstallment = new Installment(i+1, purchaseForm.getTotalInstallments(), installmentValue, purchase,nextInvoice);
-                installmentList.add(nextInstallment);
-                logger.debug("## Installment " + i + " : " + installment.toString());
-            }
+            // Next invoices resolved for the whole range at once ; generate installments child
+            billNextInstallments(purchase, creditCard, baseDate, purchaseForm.getTotalInstallments(), installmentValue);
             
-            purchase.getInvoices().addAll(invoiceList);
-            purchase.getInstallments().addAll(installmentList);
             logger.debug("### PURCHASE : {}", purchase.toString());
-            return creditPurchaseRepository.save(purchase); 
+            invoiceSummaryService.addPurchase(purchase);
+            return saveBilledPurchase(purchase);
         }
     }
 
-    // -------------------------------- FIND AND ADD SIGNATURES ON CREDIT CARD -------------------------------- 
-    private CreditPurchase creteRepeatedPurchase(CreditPurchase creditPurchase, Invoice currentInvoice) {
+    // Invoice links and totals are written in place : concurrent purchases on the same invoice neither
+    // rewrite its Invoice.purchases bag nor overwrite its total
+    private CreditPurchase saveBilledPurchase(CreditPurchase purchase) {
+        CreditPurchase saved = creditPurchaseRepository.saveAndFlush(purchase);
+        invoiceRepository.insertLinks(List.of(saved));
+        invoiceTotalsService.addPurchases(saved.getCreditCard(), List.of(saved));
+        return saved;
+    }
+
+    // --------------------------------------------------  CREATE A BATCH OF PURCHASES ON ONE CARD --------------------------------------------------
+    /**
+     * Create purchases of one card together, billed as createPurchase would bill each of them
+     * Invoices of every cycle the batch touches are resolved once. Each invoice total takes one atomic
+     * increment, category totals take one delta per invoice and category.
+     * Invoice links are written in bulk, Invoice.purchases of the touched invoices is not updated in memory
+     * @param purchaseForms validated forms, all for creditCard
+     * @param creditCard the credit card
+     * @return created purchases, in form order
+     */
+    @Transactional
+    public List<CreditPurchase> createPurchases(List<CreditPurchaseForm> purchaseForms, CreditCard creditCard) {
+    	
+    	logger.debug("## ==================================== ## INSERT {} PURCHASES ## ==================================== ## ", purchaseForms.size());
+    	BillingCalendar calendar = billingCalendarService.forCard(creditCard);
+    	LocalDate today = LocalDate.now();
+    	
+    	// 1) Plan the cycles of every purchase
+    	Map<String, PurchaseCategory> categories = new HashMap<>();
+    	List<PlannedPurchase> planned = new ArrayList<>(purchaseForms.size());
+    	Set<BillingCalendar.Cycle> cycles = new LinkedHashSet<>();
+    	Set<List<LocalDate>> retroativeCycles = new HashSet<>();
+    	Set<List<LocalDate>> nextCycleKeys = new HashSet<>();
+    	boolean billsCurrentInvoice = false;
     	
-    	 CreditPurchase purchase = new CreditPurchase();
-         purchase.setDescricao(creditPurchase.getDescricao());
-         purchase.setValue(creditPurchase.getValue());
-         purchase.setHasInstallments(false);
-         purchase.setCategory(creditPurchase.getCategory());
-         purchase.setCreditCard(creditPurchase.getCreditCard());
-         purchase.setPurchaseDateTime(creditPurchase.getPurchaseDateTime().plusMonths(1)); 
-         purchase.getInvoices().add(currentInvoice);
-         
-         return creditPurchaseRepository.save(purchase);
+    	for (CreditPurchaseForm purchaseForm : purchaseForms) {
+    		CreditPurchase purchase = new CreditPurchase(purchaseForm.getDescricao(), purchaseForm.getValue(), (purchaseForm.getPurchaseDateTime() != null) ? purchaseForm.getPurchaseDateTime() : LocalDateTime.now());
+    		purchase.setHasInstallments((purchaseForm.getTotalInstallments() > 1));
+    		purchase.setCategory(categories.computeIfAbsent(purchaseForm.getCategory(), this::findOrCreateCategory));
+    		purchase.setCreditCard(creditCard);
+    		
+    		boolean retroativePurchase = purchaseForm.getPurchaseDateTime() != null && calendar.isRetroactive(purchaseForm.getPurchaseDateTime().toLocalDate(), today);
+    		BillingCalendar.Cycle firstCycle = null;
+    		if (retroativePurchase) {
+    			firstCycle = calendar.cycleOf(purchaseForm.getPurchaseDateTime().toLocalDate());
+    			cycles.add(firstCycle);
+    			retroativeCycles.add(InvoiceProvisioningService.cycleKey(firstCycle));
+    		} else {
+    			billsCurrentInvoice = true;
+    		}
+    		
+    		LocalDate baseDate = retroativePurchase ? purchaseForm.getPurchaseDateTime().toLocalDate() : today;
+    		List<BillingCalendar.Cycle> nextCycles = calendar.nextCycles(baseDate, purchaseForm.getTotalInstallments() - 1);
+    		for (BillingCalendar.Cycle cycle : nextCycles) {
+    			cycles.add(cycle);
+    			nextCycleKeys.add(InvoiceProvisioningService.cycleKey(cycle));
+    		}
+    		planned.add(new PlannedPurchase(purchase, purchaseForm.getTotalInstallments(), firstCycle, nextCycles));
+    	}
+    	// a cycle both retroative and next for different purchases is a next cycle
+    	retroativeCycles.removeAll(nextCycleKeys);
     	
+    	// 2) Resolve every invoice the batch touches at once
+    	Invoice currentInvoice = billsCurrentInvoice ? getOrCreateCurrentInvoice(creditCard) : null;
+    	Map<List<LocalDate>, Invoice> invoicesByCycle = invoiceProvisioningService.findOrCreate(creditCard, cycles, retroativeCycles);
+    	logger.debug("## {} purchases on {} invoices", planned.size(), invoicesByCycle.size() + (currentInvoice != null ? 1 : 0));
+    	
+    	// 3) Bill installments, totals only change in memory
+    	List<CreditPurchase> purchases = new ArrayList<>(planned.size());
+    	for (PlannedPurchase plan : planned) {
+    		CreditPurchase purchase = plan.purchase();
+    		BigDecimal installmentValue = plan.installments() == 1 ? purchase.getValue()
+    				: purchase.getValue().divide(BigDecimal.valueOf(plan.installments()), 2, RoundingMode.HALF_UP);
+    		
+    		Invoice firstInvoice = plan.firstCycle() != null ? invoicesByCycle.get(InvoiceProvisioningService.cycleKey(plan.firstCycle())) : currentInvoice;
+    		billInstallment(purchase, firstInvoice, 1, plan.installments(), installmentValue);
+    		for (int i = 0; i < plan.nextCycles().size(); i++) {
+    			billInstallment(purchase, invoicesByCycle.get(InvoiceProvisioningService.cycleKey(plan.nextCycles().get(i))), i + 2, plan.installments(), installmentValue);
+    		}
+    		purchases.add(purchase);
+    	}
+    	
+    	invoiceSummaryService.addPurchases(purchases);
+    	eventPublisher.publishEvent(new CreditDataChangedEvent(creditCard.getUser().getId()));
+    	List<CreditPurchase> saved = creditPurchaseRepository.saveAllAndFlush(purchases);
+    	int links = invoiceRepository.insertLinks(saved);
+    	invoiceTotalsService.addPurchases(creditCard, saved);
+    	logger.debug("## {} purchases saved, {} invoice links", saved.size(), links);
+    	return saved;
     }
-
     
+    // the invoice side of the link is written by insertLinks, invoice and card totals by InvoiceTotalsService
+    private void billInstallment(CreditPurchase purchase, Invoice invoice, int number, int totalInstallments, BigDecimal installmentValue) {
+    	purchase.getInvoices().add(invoice);
+    	if (totalInstallments > 1) {
+    		purchase.getInstallments().add(new Installment(number, totalInstallments, installmentValue, purchase, invoice));
+    	}
+    }
+    
+    private record PlannedPurchase(CreditPurchase purchase, int installments, BillingCalendar.Cycle firstCycle, List<BillingCalendar.Cycle> nextCycles) {
+    }
+
     // =========================================== INVOICES METHODS ===================================================
     //
     // --------------------------------  DOUBLE CHECK INVOICE TOTAL AMOUNT  -------------------------------- 
+    // Recomputed from tb_installment / tb_invoice_purchase in one aggregate update, no DTO of the invoice lines
     @Transactional
-    public Invoice updateTotalAmount(InvoiceDTO invoiceDTO) {  	
+    public Invoice updateTotalAmount(Long invoiceId) {  	
     	logger.debug("## ----------------------------- ## REVIEW TOTAL AMOUNT BY PURCHASES COUNT ## ----------------------------- ## ");
-    	Invoice invoice = invoiceRepository.findById(invoiceDTO.getInvoiceId()).orElseThrow(() -> new RuntimeException("Invoice not found"));
-    	
-    	// Recalculate total amount based on purchases and installments from DTO
-    	BigDecimal totalAmount = BigDecimal.ZERO; 	
-    	for (PurchaseDTOFromInvoice purchase : invoiceDTO.getPurchases()) {
-			logger.debug("## Purchase : {}", purchase.toString());
-			
-			if(purchase.getInstallment() != null) {
-				logger.debug("## Get Installment's Value");
-				BigDecimal installmentValue = purchase.getInstallment().getValue();
-				logger.debug("## Value to add : {}", installmentValue);
-				totalAmount = totalAmount.add(installmentValue);
-			} else {
-				logger.debug("## Single Installment");
-				logger.debug("## Value to add : {}", purchase.getValue());
-				totalAmount = totalAmount.add(purchase.getValue());
-			}
-			invoice.setTotalAmount(totalAmount);
-		}
-    	logger.debug("## Total Amount : {}", totalAmount);
+    	Invoice invoice = invoiceRepository.findWithCardById(invoiceId).orElseThrow(() -> new NotFoundException("Invoice not found"));
+    	eventPublisher.publishEvent(new CreditDataChangedEvent(invoice.getCreditCard().getUser().getId()));
     	
-    	if(totalAmount.compareTo(invoice.getTotalAmount()) != 0) {
-			invoice.setTotalAmount(totalAmount);
-			invoiceRepository.save(invoice);
-			logger.debug("## Total Amount Updated! ");
-		} else {
-			logger.debug("## Total Amount is correct! ");
-		}   	
+    	BigDecimal totalAmount = invoiceTotalsService.recomputeTotals(invoice.getCreditCard(), List.of(invoiceId)).get(0).getTotalAmount();
+    	logger.debug("## Total Amount : {} (was {})", totalAmount, invoice.getTotalAmount());
+    	invoice.setTotalAmount(totalAmount);
     	return invoice;
     }
     
@@ -197,150 +255,72 @@ public class CreditTransactionService {
         LocalDate today = LocalDate.now();
         logger.debug("## Today {}", today);
 
-        // 1) Check for current OPEN invoice
-        Optional<Invoice> openInvoice = invoiceRepository.findByCreditCardAndStatus(creditCard, InvoiceStatus.OPEN);
-        if (openInvoice.isPresent()) {
-        	logger.debug("## Opened Invoice is Present : {}", openInvoice.toString());
-        	
-        	if (openInvoice.get().getEndDate().isBefore(today)) {
-        		logger.debug("## Opened Invoice Must Close");
-        		openInvoice.get().setStatus(InvoiceStatus.CLOSED);
-        		return invoiceRepository.save(openInvoice.get());	
-        	} else {
-        		return openInvoice.get();
-        	}       
-        }
-        logger.debug("## Open Invoice not Present !");    
-        
-        
-        // 2) Check for a PENDING invoice that should be opened now
-        Optional<Invoice> pendingInvoice = invoiceRepository.findFirstByCreditCardAndStatusOrderByStartDateAsc(creditCard,InvoiceStatus.PENDING);
-        
-        
-        if (pendingInvoice.isPresent()) {
-        	logger.debug("## Pending Invoice is Present : {}", openInvoice.toString());
-            Invoice invoice = pendingInvoice.get();
-            if (!today.isBefore(invoice.getStartDate()) && !today.isAfter(invoice.getEndDate())) {
-                invoice.setStatus(InvoiceStatus.OPEN);
-                return invoiceRepository.save(invoice);
-            }
+        // any path below may change the card's current invoice
+        eventPublisher.publishEvent(new CreditDataChangedEvent(creditCard.getUser().getId()));
+
+        // statuses are moved by InvoiceLifecycleJob, the current invoice is the one whose cycle covers today
+        List<Invoice> covering = invoiceRepository.findCoveringInvoices(creditCard, today, PageRequest.of(0, 1));
+        if (!covering.isEmpty()) {
+        	logger.debug("## Current Invoice : {}", covering.get(0));
+        	return covering.get(0);
         }
 
+        // cycles inside the horizon are provisioned ahead by InvoiceProvisioningJob, this is the fallback
         logger.debug("## Create Invoice! ");
+        BillingCalendar.Cycle cycle = billingCalendarService.forCard(creditCard).cycleOf(today);
+        return invoiceProvisioningService.findOrCreate(creditCard, List.of(cycle), Set.of()).get(InvoiceProvisioningService.cycleKey(cycle));
+    }
+    
+    // -------------------------------- BILL INSTALLMENTS 2..N ON THE FOLLOWING BILLING CYCLES  ----------------------------------------------
+    // purchase side only, callers link the invoice side
+    private void billNextInstallments(CreditPurchase purchase, CreditCard card, LocalDate baseDate, int totalInstallments, BigDecimal installmentValue) {
+        List<Invoice> nextInvoices = findOrCreateInvoices(card, baseDate, totalInstallments - 1);
         
-        // 3) Create new invoice
-        Invoice newInvoice = new Invoice();
-        newInvoice.setCreditCard(creditCard);
-        newInvoice.setDueDate(calculateDueDate(today, creditCard.getDueDate()));
-        newInvoice.setStartDate(calculateStartDate(today, creditCard.getBillingPeriodStart()));
-        newInvoice.setEndDate(calculateEndDate(today, creditCard.getBillingPeriodEnd()));
-        newInvoice.setTotalAmount(BigDecimal.ZERO);
-        newInvoice.setEstimateLimit(creditCard.getEstimateLimitforInvoice());
-        newInvoice.setStatus(InvoiceStatus.OPEN);
-        
-        logger.debug("## New Invoice : {} ",newInvoice.toString());
-        return invoiceRepository.save(newInvoice);
+        for (int i = 0; i < nextInvoices.size(); i++) {
+            Invoice nextInvoice = nextInvoices.get(i);
+            purchase.getInvoices().add(nextInvoice);
+            
+            Installment nextInstallment = new Installment(i + 2, totalInstallments, installmentValue, purchase, nextInvoice);
+            purchase.getInstallments().add(nextInstallment);
+            logger.debug("## Installment {} on invoice {} - {}", i + 2, nextInvoice.getStartDate(), nextInvoice.getEndDate());
+        }
     }
     
     // -------------------------------- FIND OR CREATE INVOICES BY CREDIT CARD DATE CONFIGURATIONS  ----------------------------------------------
-    private Invoice findOrCreateInvoice(CreditCard card, LocalDate startDate, LocalDate endDate, LocalDate dueDate) {
-        return invoiceRepository
-                .findByCreditCardAndStartDateAndEndDate(card, startDate, endDate)
-                .orElseGet(() -> {
-                	
-                	logger.debug("## ----------------------------- ## CREATE NEXT INVOICE ## ----------------------------- ## ");
-                	// INVOICE 
-                    Invoice invoice = new Invoice();
-                    invoice.setCreditCard(card);
-                    invoice.setStartDate(startDate);
-                    invoice.setEndDate(endDate);
-                    invoice.setDueDate(dueDate);
-                    invoice.setStatus( endDate.isBefore(LocalDate.now()) ? InvoiceStatus.CLOSED : InvoiceStatus.PENDING);
-                    invoice.setTotalAmount(BigDecimal.ZERO);  
-                    invoice.setEstimateLimit(card.getEstimateLimitforInvoice());
-                    
-                    
-                	// FIND SIGNATURES ON CREDIT CARD
-                	if(creditPurchaseRepository.existsRepeatsOnLastInvoice(card.getCardId())) {
-                		logger.debug("## Repeat exists on credit card");
-                		List<CreditPurchase> repeatPurchases = creditPurchaseRepository.findRepeatPurchasesFromLastInvoice(card.getCardId());
-                		invoice = invoiceRepository.save(invoice);
-                		invoice.getPurchases().addAll(repeatPurchases);		
-                		for (CreditPurchase creditPurchase : repeatPurchases) {
-                			
-                			logger.debug("## Repeat Purchase : " + creditPurchase.toString());
-                			CreditPurchase newPurchase = creteRepeatedPurchase(creditPurchase,invoice);
-                			invoice.setTotalAmount(invoice.getTotalAmount().add(newPurchase.getValue()));
-	
-						}
-                		
-                	}  else {
-                		logger.debug("## There´s no purchases that must repeat");
-                	}
-                    return invoiceRepository.save(invoice);
-                });
+    // Cycles for the next `count` months after baseDate
+    private List<Invoice> findOrCreateInvoices(CreditCard card, LocalDate baseDate, int count) {
+        List<BillingCalendar.Cycle> cycles = billingCalendarService.forCard(card).nextCycles(baseDate, count);
+        Map<List<LocalDate>, Invoice> invoicesByCycle = invoiceProvisioningService.findOrCreate(card, cycles, Set.of());
+        
+        List<Invoice> resolved = new ArrayList<>(cycles.size());
+        for (BillingCalendar.Cycle cycle : cycles) {
+            resolved.add(invoicesByCycle.get(InvoiceProvisioningService.cycleKey(cycle)));
+        }
+        return resolved;
     }
     
-
     // --------------------------------  FIND OR CREATE FIRST OR SINGLE RETROATIVE INVOICE ( BY PURCHASE DATE ) -------------------------------- 
-    private Invoice findOrCreateRetroativeInvoice(CreditCard card, CreditPurchaseForm purchaseForm) {
-    	
+    private Invoice findOrCreateRetroativeInvoice(CreditCard card, LocalDate purchaseDate) {
     	logger.debug("## ----------------------------- ## CREATE RETROATIVE INVOICE ## ----------------------------- ## ");
-    	LocalDate purchaseDate = purchaseForm.getPurchaseDateTime().toLocalDate();
     	logger.debug("## Purchase Date : {}",  purchaseDate);
     	
-    	LocalDate dueDate = calculateDueDate(purchaseDate, card.getDueDate());
-    	LocalDate startDate = calculateStartDate(purchaseDate, card.getBillingPeriodStart());
-    	LocalDate endDate = calculateEndDate(purchaseDate, card.getBillingPeriodEnd());
-        
-    	logger.debug("## Due Date : {} - Start Date : {} - End Date : {}" ,  dueDate,startDate,endDate);
-        return invoiceRepository
-                .findByCreditCardAndStartDateAndEndDate(card, startDate, endDate)
-                .orElseGet(() -> {	
-                	// INVOICE 
-                    Invoice invoice = new Invoice();
-                    invoice.setCreditCard(card);
-                    invoice.setStartDate(startDate);
-                    invoice.setEndDate(endDate);
-                    invoice.setDueDate(dueDate);
-                    invoice.setStatus(InvoiceStatus.CLOSED);
-                    invoice.setTotalAmount(BigDecimal.ZERO);  
-                    invoice.setEstimateLimit(card.getEstimateLimitforInvoice());
-                    return invoiceRepository.save(invoice);
-                });
+    	// an invoice already covering the date wins, even one dated with billing days the card had before
+    	List<Invoice> covering = invoiceRepository.findCoveringInvoices(card, purchaseDate, PageRequest.of(0, 1));
+    	if (!covering.isEmpty()) {
+    		return covering.get(0);
+    	}
+    	BillingCalendar.Cycle cycle = billingCalendarService.forCard(card).cycleOf(purchaseDate);
+    	List<LocalDate> key = InvoiceProvisioningService.cycleKey(cycle);
+    	logger.debug("## Due Date : {} - Start Date : {} - End Date : {}", cycle.due(), cycle.start(), cycle.end());
+        return invoiceProvisioningService.findOrCreate(card, List.of(cycle), Set.of(key)).get(key);
     }
     
 
     
     //  -------------------------------------------- INVOICEs DATE HANDLER -----------------------------------------------------
     
-    private LocalDate calculateStartDate(LocalDate today, int startDate) {
-        // e.g., start today or card's billing cycle
-        return getValidDayOfMonth(today, startDate);
-    }
-
-    private LocalDate calculateEndDate(LocalDate today, int endDate) {
-    	LocalDate invoiceEndDate = getValidDayOfMonth(today, endDate);
-        // End date stays in the same month as start date
-        return invoiceEndDate;
-    }
-    
-    private LocalDate calculateDueDate(LocalDate today , int dueDate) {
-    	LocalDate invoiceDueDate = getValidDayOfMonth(today, dueDate);
-    	invoiceDueDate = invoiceDueDate.plusMonths(1);
-        // example: end of month
-        return invoiceDueDate;
-    }
-
-    private LocalDate getValidDayOfMonth(LocalDate date, int dayOfMonth) {
-        int maxDayInMonth = date.lengthOfMonth();
-        int validDay = Math.min(dayOfMonth, maxDayInMonth);
-        return date.withDayOfMonth(validDay);
-    }
-
-    private boolean checkIfRetroative(LocalDate purchaseDate, CreditCard card) { 		
-    	LocalDate currentInvoiceStartBilling = calculateStartDate(LocalDate.now(), card.getBillingPeriodEnd());	
-    	return purchaseDate.isBefore(currentInvoiceStartBilling);
+    private boolean checkIfRetroative(LocalDate purchaseDate, CreditCard card) {
+    	return billingCalendarService.forCard(card).isRetroactive(purchaseDate, LocalDate.now());
     }
     
     // ========================================================== UPDATE PURCHASE HELPERS ==========================================================
@@ -356,6 +336,18 @@ public class CreditTransactionService {
                 .orElseGet(() -> purchaseCategoryRepository.save(new PurchaseCategory(categoryName, false, false)));
     }
     
+    /**
+     * Unlink a purchase from every invoice it is billed on
+     * Only the purchase's own tb_invoice_purchase rows are deleted : the Invoice.purchases bags are not loaded,
+     * so links other transactions insert meanwhile are kept
+     * @param purchase the purchase, its invoices list is cleared
+     */
+    public void unlinkPurchase(CreditPurchase purchase) {
+        int unlinked = invoiceRepository.deleteLinks(purchase, purchase.getInvoices());
+        purchase.getInvoices().clear();
+        logger.debug("## Purchase {} unlinked from {} invoice(s)", purchase.getPurchaseId(), unlinked);
+    }
+    
     /**
      * Reassign a purchase to invoices based on new installment count
      * Clears existing invoices and installments, then recreates them
@@ -376,13 +368,11 @@ public class CreditTransactionService {
         if (newInstallmentCount == 1) {
             logger.debug("## Single Installment");
             Invoice currentInvoice = retroativePurchase ? 
-                    findOrCreateRetroativeInvoiceForUpdate(creditCard, purchase.getPurchaseDateTime().toLocalDate()) : 
+                    findOrCreateRetroativeInvoice(creditCard, purchase.getPurchaseDateTime().toLocalDate()) : 
                     getOrCreateCurrentInvoice(creditCard);
             
-            currentInvoice.setTotalAmount(currentInvoice.getTotalAmount().add(purchase.getValue()));
-            currentInvoice.getPurchases().add(purchase);            
             purchase.getInvoices().add(currentInvoice);
-            logger.debug("## Invoice: " + currentInvoice.toString());
+            logger.debug("## Invoice: {}", currentInvoice);
             
         } else {
             // Multiple installments
@@ -394,13 +384,11 @@ public class CreditTransactionService {
             
             // Find or create current invoice
             Invoice currentInvoice = retroativePurchase ? 
-                    findOrCreateRetroativeInvoiceForUpdate(creditCard, purchase.getPurchaseDateTime().toLocalDate()) : 
+                    findOrCreateRetroativeInvoice(creditCard, purchase.getPurchaseDateTime().toLocalDate()) : 
                     getOrCreateCurrentInvoice(creditCard);
             
-            currentInvoice.setTotalAmount(currentInvoice.getTotalAmount().add(installmentValue));
-            currentInvoice.getPurchases().add(purchase);            
             purchase.getInvoices().add(currentInvoice);
-            logger.debug("## First Invoice: " + currentInvoice.toString());
+            logger.debug("## First Invoice: {}", currentInvoice);
             
             LocalDate baseDate = retroativePurchase ? 
                     purchase.getPurchaseDateTime().toLocalDate() : LocalDate.now();
@@ -408,60 +396,88 @@ public class CreditTransactionService {
             // Create first installment
             Installment installment = new Installment(1, newInstallmentCount, installmentValue, purchase, currentInvoice);
             purchase.getInstallments().add(installment);
-            logger.debug("## First Installment: " + installment.toString());
+            logger.debug("## First Installment: {}", installment);
             
             // Create remaining invoices and installments
-            for (int i = 1; i < newInstallmentCount; i++) {
-                // Calculate dates for next invoice
-                LocalDate dateForNextInvoice = baseDate.plusMonths(i);
-                LocalDate nextStartDate = calculateStartDate(dateForNextInvoice, creditCard.getBillingPeriodStart());
-                LocalDate nextEndDate = calculateEndDate(dateForNextInvoice, creditCard.getBillingPeriodEnd());
-                LocalDate nextDueDate = calculateDueDate(dateForNextInvoice, creditCard.getDueDate());
-                
-                // Find or create next invoice
-                Invoice nextInvoice = findOrCreateInvoice(creditCard, nextStartDate, nextEndDate, nextDueDate);
-                nextInvoice.setTotalAmount(nextInvoice.getTotalAmount().add(installmentValue));
-                nextInvoice.getPurchases().add(purchase);
-                purchase.getInvoices().add(nextInvoice);
-                
-                invoiceRepository.save(nextInvoice);
-                logger.debug("## Invoice " + i + ": " + nextInvoice.toString());
-                
-                // Create installment
-                Installment nextInstallment = new Installment(i + 1, newInstallmentCount, installmentValue, purchase, nextInvoice);
-                purchase.getInstallments().add(nextInstallment);
-                logger.debug("## Installment " + i + ": " + nextInstallment.toString());
-            }
+            billNextInstallments(purchase, creditCard, baseDate, newInstallmentCount, installmentValue);
         }
         
+        // links written in place, as saveBilledPurchase does
+        invoiceRepository.insertLinks(purchase, purchase.getInvoices());
+        invoiceSummaryService.addPurchase(purchase);
+        invoiceTotalsService.addPurchases(creditCard, List.of(purchase));
         logger.debug("## Purchase reassigned with {} installments", purchase.getInstallments().size());
     }
     
     /**
-     * Find or create retroactive invoice for update operations
-     * @param card the credit card
-     * @param purchaseDate the purchase date
-     * @return Invoice entity
+     * Change the value, category and/or installment count of a purchase in place, keeping its first invoice
+     * Installments still in the plan keep their rows with the new amount, tail installments are appended on the
+     * cycles after the last one or trimmed, and only links of appended or trimmed invoices are written.
+     * Totals and category summaries move by the difference, so invoices whose contribution is unchanged are not touched
+     * @param purchase the purchase, billed on at least one invoice
+     * @param newValue the new purchase value
+     * @param newCategory the new category, null to keep it
+     * @param newInstallmentCount the new number of installments
+     * @param creditCard the credit card
      */
-    private Invoice findOrCreateRetroativeInvoiceForUpdate(CreditCard card, LocalDate purchaseDate) {
-        logger.debug("## Find or create retroactive invoice for date: {}", purchaseDate);
-        
-        LocalDate dueDate = calculateDueDate(purchaseDate, card.getDueDate());
-        LocalDate startDate = calculateStartDate(purchaseDate, card.getBillingPeriodStart());
-        LocalDate endDate = calculateEndDate(purchaseDate, card.getBillingPeriodEnd());
-        
-        return invoiceRepository
-                .findByCreditCardAndStartDateAndEndDate(card, startDate, endDate)
-                .orElseGet(() -> {
-                    Invoice invoice = new Invoice();
-                    invoice.setCreditCard(card);
-                    invoice.setStartDate(startDate);
-                    invoice.setEndDate(endDate);
-                    invoice.setDueDate(dueDate);
-                    invoice.setStatus(InvoiceStatus.CLOSED);
-                    invoice.setTotalAmount(BigDecimal.ZERO);
-                    return invoiceRepository.save(invoice);
-                });
+    public void replanPurchase(CreditPurchase purchase, BigDecimal newValue, PurchaseCategory newCategory, int newInstallmentCount, CreditCard creditCard) {
+        logger.debug("## ----------------------------- ## REPLAN PURCHASE IN PLACE ## ----------------------------- ## ");
+        Map<Long, BigDecimal> totalsBefore = invoiceTotalsService.contributions(purchase);
+        Map<InvoiceCategoryKey, InvoiceSummaryService.Delta> summaryBefore = invoiceSummaryService.lines(purchase);
+
+        // current plan, one invoice per installment in installment order
+        List<Installment> installments = new ArrayList<>(purchase.getInstallments());
+        installments.sort(Comparator.comparingInt(Installment::getCurrentInstallment));
+        List<Invoice> plan = new ArrayList<>();
+        if (installments.isEmpty()) {
+            plan.add(purchase.getInvoices().get(0));
+        } else {
+            installments.forEach(installment -> plan.add(installment.getInvoice()));
+        }
+
+        purchase.setValue(newValue);
+        if (newCategory != null) {
+            purchase.setCategory(newCategory);
+        }
+        purchase.setHasInstallments(newInstallmentCount > 1);
+
+        List<Invoice> appended = plan.size() < newInstallmentCount
+                ? findOrCreateInvoices(creditCard, plan.get(plan.size() - 1).getStartDate(), newInstallmentCount - plan.size())
+                : List.of();
+        // invoices linked outside the plan (single payment billed twice) are trimmed with the tail
+        List<Invoice> trimmed = new ArrayList<>(plan.subList(Math.min(newInstallmentCount, plan.size()), plan.size()));
+        for (Invoice invoice : purchase.getInvoices()) {
+            if (plan.stream().noneMatch(kept -> kept == invoice)) {
+                trimmed.add(invoice);
+            }
+        }
+
+        // installments kept are updated in place, orphan removal deletes the trimmed ones
+        if (newInstallmentCount == 1) {
+            purchase.getInstallments().clear();
+        } else {
+            BigDecimal installmentValue = newValue.divide(BigDecimal.valueOf(newInstallmentCount), 2, RoundingMode.HALF_UP);
+            purchase.getInstallments().removeIf(installment -> installment.getCurrentInstallment() > newInstallmentCount);
+            for (Installment installment : purchase.getInstallments()) {
+                installment.setValue(installmentValue);
+                installment.setTotalInstallment(newInstallmentCount);
+            }
+            if (installments.isEmpty()) {
+                purchase.getInstallments().add(new Installment(1, newInstallmentCount, installmentValue, purchase, plan.get(0)));
+            }
+            for (int i = 0; i < appended.size(); i++) {
+                purchase.getInstallments().add(new Installment(plan.size() + i + 1, newInstallmentCount, installmentValue, purchase, appended.get(i)));
+            }
+        }
+
+        purchase.getInvoices().removeIf(invoice -> trimmed.stream().anyMatch(removed -> removed == invoice));
+        purchase.getInvoices().addAll(appended);
+        int unlinked = invoiceRepository.deleteLinks(purchase, trimmed);
+        int linked = invoiceRepository.insertLinks(purchase, appended);
+
+        invoiceSummaryService.applyChange(purchase, summaryBefore);
+        invoiceTotalsService.applyChange(creditCard, purchase, totalsBefore);
+        logger.debug("## Purchase replanned : {} -> {} installments, {} links removed, {} added", plan.size(), newInstallmentCount, unlinked, linked);
     }
 }
 
@@ -0,0 +1,59 @@
+package com.thukera.creditcard.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.thukera.creditcard.model.entities.InvoiceLifecycleRun;
+
+/**
+ * Runs the invoice lifecycle on start up and on schedule, on one instance at a time through the job lease
+ */
+@Component
+public class InvoiceLifecycleJob {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceLifecycleJob.class);
+
+	public static final String JOB_NAME = "invoice-lifecycle";
+
+	@Autowired
+	private JobLeaseService jobLeaseService;
+
+	@Autowired
+	private InvoiceLifecycleService invoiceLifecycleService;
+
+	@Value("${my.finances.app.invoiceLifecycleLease:600}")
+	private long leaseSeconds;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onStartup() {
+		run();
+	}
+
+	@Scheduled(cron = "${my.finances.app.invoiceLifecycleCron:0 5 * * * *}")
+	public void run() {
+		runOnce(LocalDate.now());
+	}
+
+	/**
+	 * Advance the lifecycle as of a day, unless another instance holds the lease
+	 * @param today the business day
+	 * @return the recorded run, empty when skipped
+	 */
+	public Optional<InvoiceLifecycleRun> runOnce(LocalDate today) {
+		if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+			logger.debug("### Invoice lifecycle skipped, lease held by another instance");
+			return Optional.empty();
+		}
+		return Optional.of(invoiceLifecycleService.advance(today, jobLeaseService.getOwner()));
+	}
+}
@@ -0,0 +1,94 @@
+package com.thukera.creditcard.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.model.entities.InvoiceLifecycleRun;
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
+import com.thukera.creditcard.repository.InvoiceLifecycleRunRepository;
+import com.thukera.creditcard.repository.InvoiceRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Moves invoices along their cycle for every card at once : OPEN or PENDING invoices whose cycle ended are CLOSED,
+ * PENDING invoices whose cycle started are OPEN. Two bulk updates keyed by date and status, each run recorded
+ * in tb_invoice_lifecycle_run and counted in invoice.lifecycle.transitions
+ */
+@Service
+public class InvoiceLifecycleService {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceLifecycleService.class);
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private InvoiceLifecycleRunRepository invoiceLifecycleRunRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Counter closedCounter;
+
+	private Counter openedCounter;
+
+	@PostConstruct
+	void init() {
+		closedCounter = transitionCounter("closed");
+		openedCounter = transitionCounter("opened");
+	}
+
+	/**
+	 * Close ended cycles and open started ones as of a day
+	 * @param today the business day
+	 * @param owner instance running the job, recorded on the run
+	 * @return the recorded run
+	 */
+	@Transactional
+	public InvoiceLifecycleRun advance(LocalDate today, String owner) {
+		LocalDateTime startedAt = LocalDateTime.now();
+
+		// panels of these users show the statuses about to move
+		List<Long> userIds = invoiceRepository.findUsersWithLifecycleChanges(today);
+
+		int closed = invoiceRepository.closeEndedCycles(today);
+		int opened = invoiceRepository.openStartedCycles(today);
+
+		InvoiceLifecycleRun run = new InvoiceLifecycleRun();
+		run.setBusinessDate(today);
+		run.setStartedAt(startedAt);
+		run.setFinishedAt(LocalDateTime.now());
+		run.setOwner(owner);
+		run.setClosedCount(closed);
+		run.setOpenedCount(opened);
+		invoiceLifecycleRunRepository.save(run);
+
+		closedCounter.increment(closed);
+		openedCounter.increment(opened);
+		userIds.forEach(userId -> eventPublisher.publishEvent(new CreditDataChangedEvent(userId)));
+
+		logger.info("### Invoice lifecycle {} : {} closed, {} opened, {} user(s)", today, closed, opened, userIds.size());
+		return run;
+	}
+
+	private Counter transitionCounter(String transition) {
+		return Counter.builder("invoice.lifecycle.transitions")
+				.description("Invoices moved by the lifecycle job")
+				.tag("transition", transition)
+				.register(meterRegistry);
+	}
+}
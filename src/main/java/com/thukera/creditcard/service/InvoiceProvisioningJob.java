@@ -0,0 +1,72 @@
+package com.thukera.creditcard.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stocks every card with invoices up to the horizon during idle hours, on one instance through the job lease
+ * Each card is provisioned in its own transaction, a failing card does not stop the others
+ */
+@Component
+public class InvoiceProvisioningJob {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceProvisioningJob.class);
+
+	public static final String JOB_NAME = "invoice-provisioning";
+
+	@Autowired
+	private JobLeaseService jobLeaseService;
+
+	@Autowired
+	private InvoiceProvisioningService invoiceProvisioningService;
+
+	@Value("${my.finances.app.invoiceProvisioningLease:3600}")
+	private long leaseSeconds;
+
+	@Value("${my.finances.app.invoiceProvisioningBatch:100}")
+	private int batchSize;
+
+	@Scheduled(cron = "${my.finances.app.invoiceProvisioningCron:0 30 3 * * *}")
+	public void run() {
+		runOnce(LocalDate.now());
+	}
+
+	/**
+	 * Provision every card short of invoices as of a day, unless another instance holds the lease
+	 * @param today the business day
+	 * @return number of invoices created
+	 */
+	public int runOnce(LocalDate today) {
+		if (!jobLeaseService.tryAcquire(JOB_NAME, Duration.ofSeconds(leaseSeconds))) {
+			logger.debug("### Invoice provisioning skipped, lease held by another instance");
+			return 0;
+		}
+		int cards = 0;
+		int created = 0;
+		Long afterCardId = 0L;
+		List<Long> cardIds;
+		do {
+			cardIds = invoiceProvisioningService.findCardsToProvision(today, afterCardId, batchSize);
+			for (Long cardId : cardIds) {
+				try {
+					created += invoiceProvisioningService.provisionCard(cardId, today);
+					cards++;
+				} catch (RuntimeException e) {
+					logger.warn("### Invoice provisioning failed for card {} : {}", cardId, e.getMessage());
+				}
+				afterCardId = cardId;
+			}
+		} while (cardIds.size() == batchSize);
+
+		logger.info("### Invoice provisioning {} : {} invoice(s) created on {} card(s)", today, created, cards);
+		return created;
+	}
+}
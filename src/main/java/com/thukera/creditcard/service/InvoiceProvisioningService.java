@@ -0,0 +1,257 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.model.billing.BillingCalendar;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
+import com.thukera.creditcard.repository.CreditcardRepository;
+import com.thukera.creditcard.repository.InvoiceRepository;
+import com.thukera.root.model.messages.NotFoundException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Creates the invoices of a card's billing cycles
+ * InvoiceProvisioningJob stocks every card with its next cycles ahead of time, so purchases find their invoices
+ * already there; findOrCreate is the on demand fallback for cycles past the horizon.
+ * Both insert-or-fetch on the unique cycle key under the card lock, so concurrent writers share one invoice per cycle.
+ * Cycles created are counted in invoice.provisioning.cycles, tagged by source
+ */
+@Service
+public class InvoiceProvisioningService {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceProvisioningService.class);
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private CreditcardRepository creditcardRepository;
+
+	@Autowired
+	private BillingCalendarService billingCalendarService;
+
+	@Autowired
+	private RecurringChargeService recurringChargeService;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private CardLocks cardLocks;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// cycles kept ahead, the current one included
+	@Value("${my.finances.app.invoiceHorizon:3}")
+	private int horizon;
+
+	private Counter scheduledCounter;
+
+	private Counter onDemandCounter;
+
+	@PostConstruct
+	void init() {
+		scheduledCounter = cyclesCounter("scheduled");
+		onDemandCounter = cyclesCounter("on_demand");
+	}
+
+	/**
+	 * Existing invoices of the cycles in one query, missing ones inserted together
+	 * Retroative cycles are created CLOSED without the card's recurring charges, like a single retroative invoice
+	 * @param card the credit card
+	 * @param cycles cycles to resolve
+	 * @param retroativeCycles keys of the retroative cycles among them
+	 * @return invoices keyed by cycleKey
+	 */
+	@Transactional
+	public Map<List<LocalDate>, Invoice> findOrCreate(CreditCard card, Collection<BillingCalendar.Cycle> cycles, Set<List<LocalDate>> retroativeCycles) {
+		Map<List<LocalDate>, Invoice> invoicesByCycle = new HashMap<>();
+		int created = findOrCreate(card, cycles, retroativeCycles, LocalDate.now(), invoicesByCycle);
+		onDemandCounter.increment(created);
+		return invoicesByCycle;
+	}
+
+	/**
+	 * Stock a card with invoices for the current cycle and the ones following it, up to the horizon
+	 * Cycles overlapping an invoice the card already has are left out : after a billing day change, the current
+	 * invoice and those already holding purchases keep their dates and their month
+	 * @param cardId the card ID
+	 * @param today the business day
+	 * @return number of invoices created
+	 * @throws NotFoundException if the card does not exist
+	 */
+	@Transactional
+	public int provisionCard(Long cardId, LocalDate today) {
+		CreditCard card = creditcardRepository.findById(cardId).orElseThrow(() -> new NotFoundException("Credit card not found"));
+		BillingCalendar calendar = billingCalendarService.forCard(card);
+
+		List<BillingCalendar.Cycle> cycles = new ArrayList<>(horizon);
+		cycles.add(calendar.cycleOf(today));
+		cycles.addAll(calendar.nextCycles(today, horizon - 1));
+
+		// cycles stay inside their month, the card's invoices from the first month on are the only ones to overlap
+		List<Invoice> existing = invoiceRepository.findByCreditCardAndStartDateRange(card,
+				cycles.get(0).start().withDayOfMonth(1), cycles.get(cycles.size() - 1).end());
+		cycles.removeIf(cycle -> existing.stream().anyMatch(invoice -> overlaps(cycle, invoice)));
+
+		int created = findOrCreate(card, cycles, Set.of(), today, new HashMap<>());
+		if (created > 0) {
+			scheduledCounter.increment(created);
+			eventPublisher.publishEvent(new CreditDataChangedEvent(card.getUser().getId()));
+		}
+		return created;
+	}
+
+	/**
+	 * Re-stock a card after its billing days changed
+	 * Its PENDING invoices nothing was billed on, dated with other days than the card's, are deleted and their
+	 * cycles provisioned again with the new days. Invoices holding purchases keep their dates
+	 * @param card the credit card, already saved with its new billing days
+	 * @param today the business day
+	 * @return number of stale invoices deleted
+	 */
+	@Transactional
+	public int reprovisionCard(CreditCard card, LocalDate today) {
+		if (card.getBillingPeriodStart() == null || card.getBillingPeriodEnd() == null || card.getDueDate() == null) {
+			return 0;
+		}
+		BillingCalendar calendar = billingCalendarService.forCard(card);
+		List<Long> stale = invoiceRepository.findEmptyPendingInvoices(card).stream()
+				.filter(invoice -> !isSameCycle(calendar.cycleOf(invoice.getStartDate()), invoice))
+				.map(Invoice::getInvoiceId)
+				.toList();
+		if (stale.isEmpty()) {
+			return 0;
+		}
+
+		cardLocks.lockUntilCompletion(card.getCardId());
+		int deleted = invoiceRepository.deleteEmptyPendingInvoices(stale);
+		invoiceSummaryService.removeInvoices(stale);
+		logger.debug("### Card {} : {} stale pending invoices deleted", card.getCardId(), deleted);
+		provisionCard(card.getCardId(), today);
+		return deleted;
+	}
+
+	/**
+	 * Next page of cards short of invoices up to the horizon
+	 * @param today the business day
+	 * @param afterCardId last card of the previous page, 0 for the first
+	 * @param pageSize cards per page
+	 */
+	public List<Long> findCardsToProvision(LocalDate today, Long afterCardId, int pageSize) {
+		return creditcardRepository.findCardIdsToProvision(today, horizon, afterCardId, PageRequest.of(0, pageSize));
+	}
+
+	public static List<LocalDate> cycleKey(BillingCalendar.Cycle cycle) {
+		return List.of(cycle.start(), cycle.end());
+	}
+
+	// Cycles the card already has in one range query; missing ones are inserted if still absent under the card lock
+	// and read back, whichever transaction created them. Returns how many this transaction inserted
+	private int findOrCreate(CreditCard card, Collection<BillingCalendar.Cycle> cycles, Set<List<LocalDate>> retroativeCycles,
+			LocalDate today, Map<List<LocalDate>, Invoice> invoicesByCycle) {
+		if (cycles.isEmpty()) {
+			return 0;
+		}
+		LocalDate from = cycles.stream().map(BillingCalendar.Cycle::start).min(LocalDate::compareTo).orElseThrow();
+		LocalDate to = cycles.stream().map(BillingCalendar.Cycle::start).max(LocalDate::compareTo).orElseThrow();
+
+		List<BillingCalendar.Cycle> missing = findExisting(card, cycles, from, to, invoicesByCycle);
+		if (missing.isEmpty()) {
+			return 0;
+		}
+
+		// same card writers of this instance take turns, the insert skips cycles one of them created meanwhile
+		cardLocks.lockUntilCompletion(card.getCardId());
+		List<Invoice> created = new ArrayList<>(missing.size());
+		for (BillingCalendar.Cycle cycle : missing) {
+			Invoice newInvoice = new Invoice();
+			newInvoice.setCreditCard(card);
+			newInvoice.setStartDate(cycle.start());
+			newInvoice.setEndDate(cycle.end());
+			newInvoice.setDueDate(cycle.due());
+			newInvoice.setStatus(statusOf(cycle, retroativeCycles.contains(cycleKey(cycle)), today));
+			newInvoice.setTotalAmount(BigDecimal.ZERO);
+			newInvoice.setEstimateLimit(card.getEstimateLimitforInvoice());
+			created.add(newInvoice);
+		}
+		int inserted = invoiceRepository.insertCyclesIfAbsent(created);
+		findExisting(card, cycles, from, to, invoicesByCycle);
+
+		// BILL SIGNATURES ON CREDIT CARD - idempotent per cycle, should another instance have created one of them
+		List<Invoice> createdNext = new ArrayList<>();
+		for (BillingCalendar.Cycle cycle : missing) {
+			if (!retroativeCycles.contains(cycleKey(cycle))) {
+				createdNext.add(invoicesByCycle.get(cycleKey(cycle)));
+			}
+		}
+		recurringChargeService.billCycles(card, createdNext);
+		logger.debug("### Card {} : {} cycles, {} missing, {} inserted", card.getCardId(), invoicesByCycle.size(), missing.size(), inserted);
+		return inserted;
+	}
+
+	// fills invoicesByCycle with the card's invoices of the range, returns the cycles still without one
+	private List<BillingCalendar.Cycle> findExisting(CreditCard card, Collection<BillingCalendar.Cycle> cycles, LocalDate from,
+			LocalDate to, Map<List<LocalDate>, Invoice> invoicesByCycle) {
+		for (Invoice invoice : invoiceRepository.findByCreditCardAndStartDateRange(card, from, to)) {
+			invoicesByCycle.putIfAbsent(List.of(invoice.getStartDate(), invoice.getEndDate()), invoice);
+		}
+		List<BillingCalendar.Cycle> missing = new ArrayList<>();
+		for (BillingCalendar.Cycle cycle : cycles) {
+			if (!invoicesByCycle.containsKey(cycleKey(cycle))) {
+				missing.add(cycle);
+			}
+		}
+		return missing;
+	}
+
+	private static boolean isSameCycle(BillingCalendar.Cycle cycle, Invoice invoice) {
+		return cycle.start().equals(invoice.getStartDate()) && cycle.end().equals(invoice.getEndDate())
+				&& cycle.due().equals(invoice.getDueDate());
+	}
+
+	private static boolean overlaps(BillingCalendar.Cycle cycle, Invoice invoice) {
+		return !invoice.getStartDate().isAfter(cycle.end()) && !invoice.getEndDate().isBefore(cycle.start());
+	}
+
+	// the status InvoiceLifecycleService would give the cycle today
+	private static InvoiceStatus statusOf(BillingCalendar.Cycle cycle, boolean retroative, LocalDate today) {
+		if (retroative || cycle.end().isBefore(today)) {
+			return InvoiceStatus.CLOSED;
+		}
+		return cycle.start().isAfter(today) ? InvoiceStatus.PENDING : InvoiceStatus.OPEN;
+	}
+
+	private Counter cyclesCounter(String source) {
+		return Counter.builder("invoice.provisioning.cycles")
+				.description("Invoices created for billing cycles")
+				.tag("source", source)
+				.register(meterRegistry);
+	}
+}
@@ -1,24 +1,27 @@
 package com.thukera.creditcard.service;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.thukera.creditcard.model.dto.InvoiceDTO;
+import com.thukera.creditcard.model.dto.InvoiceHeaderDTO;
+import com.thukera.creditcard.model.dto.InvoiceLine;
+import com.thukera.creditcard.model.dto.PurchaseCursor;
+import com.thukera.creditcard.model.dto.PurchaseDTOFromInvoice;
+import com.thukera.creditcard.model.dto.PurchasePageDTO;
 import com.thukera.creditcard.model.entities.CreditCard;
 import com.thukera.creditcard.model.entities.CreditPurchase;
 import com.thukera.creditcard.model.entities.Invoice;
 import com.thukera.creditcard.model.enums.InvoiceStatus;
-import com.thukera.creditcard.model.form.CategoryPanel;
 import com.thukera.creditcard.model.form.CreditPanel;
 import com.thukera.creditcard.model.form.InvoiceForm;
 import com.thukera.creditcard.repository.InvoiceRepository;
@@ -34,12 +37,20 @@ public class InvoiceService {
 
     private static final Logger logger = LogManager.getLogger(InvoiceService.class);
 
+    private static final int MAX_PURCHASE_PAGE_SIZE = 100;
+
     @Autowired
     private InvoiceRepository invoiceRepository;
 
     @Autowired
     private CreditCardService creditCardService;
 
+    @Autowired
+    private InvoiceSummaryService invoiceSummaryService;
+
+    @Autowired
+    private InvoiceTotalsService invoiceTotalsService;
+
     @Autowired
     private AuthenticationHelper authHelper;
     
@@ -48,84 +59,66 @@ public class InvoiceService {
     public Invoice getInvoiceEntityById(Long invoiceId) {
         logger.debug("### Fetching invoice with ID: {}", invoiceId);
 
-        Invoice invoice = invoiceRepository.findById(invoiceId)
-                .orElseThrow(() -> new NotFoundException("Invoice not found"));
-
-        validateInvoiceOwnership(invoice);
+        Invoice invoice = findOwnedInvoice(invoiceId);
 
         logger.debug("### Invoice access authorized");
         return invoice;
     }
 
+    // GET INVOICE HEADER - no purchase list, no panel metrics
+    @Transactional(readOnly = true)
+    public InvoiceHeaderDTO getInvoiceHeader(Long invoiceId) {
+        logger.debug("### Fetching invoice header with ID: {}", invoiceId);
+        return InvoiceHeaderDTO.fromEntity(findOwnedInvoice(invoiceId));
+    }
+
+    // GET INVOICE PURCHASES - keyset page after the cursor (first page when cursor is null)
+    @Transactional(readOnly = true)
+    public PurchasePageDTO getInvoicePurchases(Long invoiceId, String cursor, int size) {
+        logger.debug("### Fetching purchases of invoice {} after cursor: {}", invoiceId, cursor);
+
+        int pageSize = Math.min(Math.max(size, 1), MAX_PURCHASE_PAGE_SIZE);
+        findOwnedInvoice(invoiceId);
+
+        // one extra row tells whether there is a next page
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<InvoiceLine> lines;
+        if (cursor == null || cursor.isBlank()) {
+            lines = invoiceRepository.findFirstLinesPage(invoiceId, limit);
+        } else {
+            PurchaseCursor after = PurchaseCursor.decode(cursor);
+            lines = invoiceRepository.findLinesPageAfter(invoiceId, after.getPurchaseDateTime(), after.getPurchaseId(), limit);
+        }
+
+        boolean hasMore = lines.size() > pageSize;
+        List<InvoiceLine> page = hasMore ? lines.subList(0, pageSize) : lines;
+
+        List<PurchaseDTOFromInvoice> purchases = page.stream()
+                .map(line -> PurchaseDTOFromInvoice.fromEntity(line.getPurchase(), line.getInstallment()))
+                .collect(Collectors.toList());
+        String nextCursor = hasMore ? PurchaseCursor.after(page.get(page.size() - 1).getPurchase()).encode() : null;
+
+        logger.debug("### Returning {} purchases, has more: {}", purchases.size(), hasMore);
+        return new PurchasePageDTO(purchases, nextCursor);
+    }
+
     // GET INVOICE BY ID - DTO
     @Transactional(readOnly = true)
     public InvoiceDTO getInvoiceById(Long invoiceId) {
         logger.debug("### Fetching invoice with ID: {}", invoiceId);
 
-        Invoice invoice = invoiceRepository.findById(invoiceId)
-                .orElseThrow(() -> new NotFoundException("Invoice not found"));
-
-        validateInvoiceOwnership(invoice);
+        // Invoice and card in one query ; (purchase, installment of this invoice) pairs in a second one
+        Invoice invoice = findOwnedInvoice(invoiceId);
         logger.debug("### Invoice access authorized");   
         
-        // INVOICE ALREADY RECOVERED
-        InvoiceDTO invoiceDTO = InvoiceDTO.fromEntity(invoice);
-
-        
-        // BUILD FOR METRICS PANEL - Travels Trough Purchases and recovery details
-        CreditPanel creditPanel = new CreditPanel();
-        creditPanel.setTotalLimit(invoice.getCreditCard().getTotalLimit());
-        creditPanel.setUsedLimit(invoice.getCreditCard().getUsedLimit());
+        List<InvoiceLine> lines = invoiceRepository.findLinesByInvoiceId(invoiceId);
         
-        ArrayList<CategoryPanel> categoryPanels = new ArrayList<>();
-        BigDecimal totalInstallments = BigDecimal.ZERO;
-        BigDecimal paydInstallments = BigDecimal.ZERO;
-        
-        // Runs through DTO Class
-        for (int i = 0; i < invoiceDTO.getPurchases().size(); i++) {
-			
-        	logger.debug("### Purchase {}: {}", i, invoiceDTO.getPurchases().get(i).toString());
-			
-        	// Recovery From Entity - category details - stores on array of objets
-			CategoryPanel categoryPanel = new CategoryPanel();
-			categoryPanel.setCategory(invoice.getPurchases().get(i).getCategory().getName());
-			categoryPanel.setValue(invoice.getPurchases().get(i).getValue());
-			categoryPanels.add(categoryPanel);
-			
-			// Recovery From DTO - total / payd value details
-			if(invoiceDTO.getPurchases().get(i).getInstallment() != null) {
-				BigDecimal purchaseValue = invoiceDTO.getPurchases().get(i).getValue();
-				int currentInstallment = invoiceDTO.getPurchases().get(i).getInstallment().getCurrentInstallment();
-				BigDecimal paydAmount = purchaseValue.multiply(BigDecimal.valueOf(currentInstallment))
-						.divide(BigDecimal.valueOf(invoiceDTO.getPurchases().get(i).getInstallment().getTotalInstallment()), 2, BigDecimal.ROUND_HALF_UP);
-				totalInstallments = totalInstallments.add(invoiceDTO.getPurchases().get(i).getValue());
-				paydInstallments = paydInstallments.add(paydAmount);
-			}else {
-				totalInstallments = totalInstallments.add(invoiceDTO.getPurchases().get(i).getValue());
-				paydInstallments = paydInstallments.add(invoiceDTO.getPurchases().get(i).getValue());
-			}	
-			creditPanel.setTotalInstallments(totalInstallments);
-			creditPanel.setPaydInstallments(paydInstallments);			
-		}
+        // INVOICE ALREADY RECOVERED
+        InvoiceDTO invoiceDTO = InvoiceDTO.fromLines(invoice, lines);
 
         
-        
-        Map<String, BigDecimal> categoryMap = new HashMap<>();
-        // Sum values by category
-        for (CategoryPanel panel : categoryPanels) {
-        	categoryMap.merge(panel.getCategory(), panel.getValue(), BigDecimal::add);
-        }
-	    // Convert back to list
-	    List<CategoryPanel> consolidatedCategories = categoryMap.entrySet().stream()
-	        .map(entry -> {
-	            CategoryPanel panel = new CategoryPanel();
-	            panel.setCategory(entry.getKey());
-	            panel.setValue(entry.getValue());
-	            return panel;
-	        })
-	        .collect(Collectors.toList());
-        
-	   creditPanel.setCategoryPanel(consolidatedCategories);
+        // BUILD FOR METRICS PANEL - pre-summed category rows, maintained on every purchase write
+        CreditPanel creditPanel = invoiceSummaryService.getCreditPanel(invoice);
 	    
 	   invoiceDTO.setCreditPanel(creditPanel);
 	    
@@ -154,33 +147,31 @@ public class InvoiceService {
     public InvoiceDTO putInvoice(Long invoiceId, InvoiceForm invoiceForm) {
         
     	logger.debug("### Form: {}", invoiceForm.toString());
-    	Invoice invoice = invoiceRepository.findById(invoiceId)
-                .orElseThrow(() -> new NotFoundException("Invoice not found"));
-    	
-    	validateInvoiceOwnership(invoice);
+    	Invoice invoice = findOwnedInvoice(invoiceId);
         logger.debug("### Invoice Selected: {}", invoice.getInvoiceId());
         
         invoice.setEstimateLimit(invoiceForm.getEstimateLimit());
         logger.debug("### Invoice Updated: {}", invoice.toString());
         invoiceRepository.save(invoice);
+        creditCardService.publishChange(invoice.getCreditCard());
         
         return InvoiceDTO.fromEntity(invoice);
     }
     
-    // CHANGE INVOICE STATUS 
+    // CHANGE INVOICE STATUS - entering or leaving PAID moves the invoice total on the card used limit
     @Transactional
     public InvoiceDTO putInvoiceStatus(Long invoiceId, String status) {
         
-    	Invoice invoice = invoiceRepository.findById(invoiceId)
-                .orElseThrow(() -> new NotFoundException("Invoice not found"));
-    	
-    	validateInvoiceOwnership(invoice);
+    	Invoice invoice = findOwnedInvoice(invoiceId);
         logger.debug("### Invoice Selected: {}", invoice.getInvoiceId());
         
+        InvoiceStatus oldStatus = invoice.getStatus();
         try {
         	InvoiceStatus newStatus = InvoiceStatus.valueOf(status.toUpperCase());	
 			invoice.setStatus(newStatus);
 			invoiceRepository.save(invoice);
+			invoiceTotalsService.applyStatusChange(invoice, oldStatus);
+			creditCardService.publishChange(invoice.getCreditCard());
 			logger.debug("### Invoice status updated to: {}", newStatus);
 		} catch (IllegalArgumentException e) {
 			logger.error("### Invalid status value: {}", status);
@@ -190,12 +181,12 @@ public class InvoiceService {
     }
     
 
-    // VALIDATE OWNERSHIP
-    private void validateInvoiceOwnership(Invoice invoice) {
-        Long cardOwnerId = invoice.getCreditCard().getUser().getId();
-        if (!authHelper.canAccessUserResource(cardOwnerId)) {
-            logger.warn("### Unauthorized access attempt to invoice: {}", invoice.getInvoiceId());
-            throw new SecurityException("Não autorizado");
-        }
+    // FIND INVOICE SCOPED TO OWNER - lookup and authorization in one query, admins keep the unscoped path
+    private Invoice findOwnedInvoice(Long invoiceId) {
+        Optional<Invoice> invoice = authHelper.isCurrentUserAdmin()
+                ? invoiceRepository.findWithCardById(invoiceId)
+                : invoiceRepository.findByIdAndOwner(invoiceId, authHelper.getCurrentUserId());
+
+        return invoice.orElseThrow(() -> new NotFoundException("Invoice not found"));
     }
 }
@@ -0,0 +1,206 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.model.dto.CategoryTotalRow;
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Installment;
+import com.thukera.creditcard.model.entities.InvoiceCategoryKey;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.form.CategoryPanel;
+import com.thukera.creditcard.model.form.CreditPanel;
+import com.thukera.creditcard.repository.InvoiceCategorySummaryRepository;
+
+/**
+ * Maintains the per invoice, per category totals behind the invoice CreditPanel
+ * Purchase writes apply deltas in their own transaction; rebuild recomputes from the purchase tables
+ */
+@Service
+public class InvoiceSummaryService {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceSummaryService.class);
+
+	@Autowired
+	private InvoiceCategorySummaryRepository summaryRepository;
+
+	/**
+	 * Add a purchase to the totals of every invoice it is billed on
+	 * Call after the purchase is attached to its invoices and installments
+	 */
+	public void addPurchase(CreditPurchase purchase) {
+		applyPurchase(purchase, 1);
+	}
+
+	/**
+	 * Add many purchases at once, with a single delta per invoice and category
+	 * Call after the purchases are attached to their invoices and installments
+	 */
+	public void addPurchases(Collection<CreditPurchase> purchases) {
+		Map<InvoiceCategoryKey, Delta> deltas = new LinkedHashMap<>();
+		for (CreditPurchase purchase : purchases) {
+			forEachLine(purchase, 1, (key, delta) -> deltas.merge(key, delta, Delta::plus));
+		}
+		logger.debug("### {} purchases folded into {} category deltas", purchases.size(), deltas.size());
+		deltas.forEach(this::apply);
+	}
+
+	/**
+	 * Take a purchase out of the totals of every invoice it is billed on
+	 * Call before the purchase is detached from its invoices or changes value/category
+	 */
+	public void removePurchase(CreditPurchase purchase) {
+		applyPurchase(purchase, -1);
+	}
+
+	/**
+	 * Category lines of a purchase, taken before it is changed in place and given back to applyChange
+	 */
+	Map<InvoiceCategoryKey, Delta> lines(CreditPurchase purchase) {
+		Map<InvoiceCategoryKey, Delta> lines = new LinkedHashMap<>();
+		forEachLine(purchase, 1, (key, delta) -> lines.merge(key, delta, Delta::plus));
+		return lines;
+	}
+
+	/**
+	 * Apply only the rows a purchase changed in place moved : its lines now minus the lines taken before
+	 */
+	void applyChange(CreditPurchase purchase, Map<InvoiceCategoryKey, Delta> before) {
+		Map<InvoiceCategoryKey, Delta> deltas = lines(purchase);
+		before.forEach((key, delta) -> deltas.merge(key, delta.negate(), Delta::plus));
+		deltas.values().removeIf(Delta::isZero);
+		logger.debug("### Changed purchase moved {} category rows", deltas.size());
+		deltas.forEach(this::apply);
+	}
+
+	/**
+	 * Add pre-summed single payment purchases of one category to one invoice
+	 */
+	public void addCategoryTotal(Invoice invoice, Long categoryId, BigDecimal total, int count) {
+		apply(new InvoiceCategoryKey(invoice.getInvoiceId(), categoryId), new Delta(total, total, count));
+	}
+
+	/**
+	 * Drop the category rows of invoices just deleted
+	 */
+	void removeInvoices(Collection<Long> invoiceIds) {
+		int rows = summaryRepository.deleteOrphanSummaries(invoiceIds);
+		logger.debug("### {} category rows of {} deleted invoices removed", rows, invoiceIds.size());
+	}
+
+	/**
+	 * Build the CreditPanel of an invoice from its pre-summed category rows
+	 */
+	public CreditPanel getCreditPanel(Invoice invoice) {
+		CreditPanel creditPanel = new CreditPanel();
+		creditPanel.setTotalLimit(invoice.getCreditCard().getTotalLimit());
+		creditPanel.setUsedLimit(invoice.getCreditCard().getUsedLimit());
+
+		List<CategoryTotalRow> rows = summaryRepository.findCategoryTotals(invoice.getInvoiceId());
+		logger.debug("### Invoice {} has {} category totals", invoice.getInvoiceId(), rows.size());
+
+		if (!rows.isEmpty()) {
+			creditPanel.setTotalInstallments(rows.stream().map(CategoryTotalRow::getTotalValue).reduce(BigDecimal.ZERO, BigDecimal::add));
+			creditPanel.setPaydInstallments(rows.stream().map(CategoryTotalRow::getPaidValue).reduce(BigDecimal.ZERO, BigDecimal::add));
+		}
+		creditPanel.setCategoryPanel(rows.stream()
+				.map(row -> {
+					CategoryPanel panel = new CategoryPanel();
+					panel.setCategory(row.getCategory());
+					panel.setValue(row.getTotalValue());
+					return panel;
+				})
+				.collect(Collectors.toList()));
+		return creditPanel;
+	}
+
+	/**
+	 * Recompute the totals from scratch, for repair
+	 * @param invoiceId a single invoice, or null for every invoice
+	 * @return number of summary rows written
+	 */
+	@Transactional
+	public int rebuild(Long invoiceId) {
+		logger.debug("### Rebuilding category summary for invoice: {}", invoiceId != null ? invoiceId : "ALL");
+		if (invoiceId == null) {
+			summaryRepository.deleteAllSummaries();
+		} else {
+			summaryRepository.deleteSummaries(invoiceId);
+		}
+		int rows = summaryRepository.insertSummaries(invoiceId);
+		logger.debug("### Category summary rebuilt with {} rows", rows);
+		return rows;
+	}
+
+	private void applyPurchase(CreditPurchase purchase, int sign) {
+		forEachLine(purchase, sign, this::apply);
+	}
+
+	private void forEachLine(CreditPurchase purchase, int sign, BiConsumer<InvoiceCategoryKey, Delta> action) {
+		if (purchase.getCategory() == null || purchase.getValue() == null) {
+			return;
+		}
+		for (Invoice invoice : purchase.getInvoices()) {
+			Installment installment = purchase.getInstallments().stream()
+					.filter(inst -> isSameInvoice(inst.getInvoice(), invoice))
+					.findFirst()
+					.orElse(null);
+			action.accept(key(invoice, purchase), delta(purchase, installment, sign));
+		}
+	}
+
+	private void apply(InvoiceCategoryKey key, Delta delta) {
+		summaryRepository.upsertDelta(key, delta.total(), delta.paid(), delta.count());
+	}
+
+	private static InvoiceCategoryKey key(Invoice invoice, CreditPurchase purchase) {
+		return new InvoiceCategoryKey(invoice.getInvoiceId(), purchase.getCategory().getPurchaseClassId());
+	}
+
+	private static Delta delta(CreditPurchase purchase, Installment installment, int sign) {
+		BigDecimal total = purchase.getValue();
+		BigDecimal paid = installment != null
+				? total.multiply(BigDecimal.valueOf(installment.getCurrentInstallment()))
+						.divide(BigDecimal.valueOf(installment.getTotalInstallment()), 2, RoundingMode.HALF_UP)
+				: total;
+		if (sign < 0) {
+			total = total.negate();
+			paid = paid.negate();
+		}
+		return new Delta(total, paid, sign);
+	}
+
+	private static boolean isSameInvoice(Invoice a, Invoice b) {
+		if (a == b) {
+			return true;
+		}
+		return a != null && b != null && a.getInvoiceId() != null && a.getInvoiceId().equals(b.getInvoiceId());
+	}
+
+	record Delta(BigDecimal total, BigDecimal paid, int count) {
+
+		Delta plus(Delta other) {
+			return new Delta(total.add(other.total), paid.add(other.paid), count + other.count);
+		}
+
+		Delta negate() {
+			return new Delta(total.negate(), paid.negate(), -count);
+		}
+
+		boolean isZero() {
+			return total.signum() == 0 && paid.signum() == 0 && count == 0;
+		}
+	}
+}
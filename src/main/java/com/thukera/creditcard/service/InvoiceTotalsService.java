@@ -0,0 +1,200 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.model.dto.InvoiceTotalRow;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Installment;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.repository.CreditcardRepository;
+import com.thukera.creditcard.repository.InvoiceRepository;
+
+/**
+ * Keeps invoice totals and the card used limit in step with purchase writes and invoice status changes
+ * The used limit is the sum of the totals of the card's invoices not PAID. Both move by exact deltas
+ * with atomic updates, so a write costs the same however many invoices the card has;
+ * recomputeTotals and CreditCardService.updateCreditCardUsedLimit are the aggregate fallbacks
+ */
+@Service
+public class InvoiceTotalsService {
+
+	private static final Logger logger = LogManager.getLogger(InvoiceTotalsService.class);
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private CreditcardRepository creditcardRepository;
+
+	/**
+	 * Add billed purchases to their invoices and card : installment values when the purchase has installments,
+	 * the purchase value on each of its invoices otherwise
+	 * @param card the card of the purchases
+	 * @param purchases purchases already linked to their invoices
+	 */
+	@Transactional
+	public void addPurchases(CreditCard card, Collection<CreditPurchase> purchases) {
+		apply(card, purchases, false);
+	}
+
+	/**
+	 * Take purchases off their invoices and card, before they are unlinked or their installments replaced
+	 * @param card the card of the purchases
+	 * @param purchases purchases still linked to their invoices
+	 */
+	@Transactional
+	public void removePurchases(CreditCard card, Collection<CreditPurchase> purchases) {
+		apply(card, purchases, true);
+	}
+
+	/**
+	 * Contribution of a purchase to each of its invoices, keyed by invoice id
+	 * Taken before a purchase is changed in place, then given back to applyChange
+	 */
+	public Map<Long, BigDecimal> contributions(CreditPurchase purchase) {
+		Map<Long, BigDecimal> contributions = new TreeMap<>();
+		collect(purchase, false, contributions, new HashMap<>());
+		return contributions;
+	}
+
+	/**
+	 * Apply only the difference between a purchase's contributions before a change and now
+	 * Invoices the purchase keeps with the same contribution are not touched
+	 * @param card the card of the purchase
+	 * @param purchase the changed purchase, linked to its new invoices
+	 * @param before contributions taken before the change
+	 */
+	@Transactional
+	public void applyChange(CreditCard card, CreditPurchase purchase, Map<Long, BigDecimal> before) {
+		Map<Long, BigDecimal> deltas = new TreeMap<>();
+		Map<Long, Invoice> invoices = new HashMap<>();
+		collect(purchase, false, deltas, invoices);
+		before.forEach((invoiceId, value) -> deltas.merge(invoiceId, value.negate(), BigDecimal::add));
+		deltas.values().removeIf(delta -> delta.signum() == 0);
+		applyDeltas(card, deltas, invoices);
+	}
+
+	/**
+	 * Add a delta to one invoice and, unless the invoice is PAID, to its card
+	 * @param invoice the invoice, flushed
+	 * @param delta value to add, negative to take off
+	 */
+	@Transactional
+	public void addToInvoice(Invoice invoice, BigDecimal delta) {
+		Map<Long, BigDecimal> deltas = new TreeMap<>();
+		deltas.put(invoice.getInvoiceId(), delta);
+		applyDeltas(invoice.getCreditCard(), deltas, Map.of(invoice.getInvoiceId(), invoice));
+	}
+
+	/**
+	 * Move the invoice total in or out of the used limit when the invoice enters or leaves PAID
+	 * The new status must be saved first : flushing it locks the invoice row, so the total read
+	 * afterwards is the one concurrent purchases see once they get the row
+	 * @param invoice the invoice with its new status
+	 * @param oldStatus status before the change
+	 */
+	@Transactional
+	public void applyStatusChange(Invoice invoice, InvoiceStatus oldStatus) {
+		boolean wasPaid = oldStatus == InvoiceStatus.PAID;
+		boolean paid = invoice.getStatus() == InvoiceStatus.PAID;
+		if (wasPaid == paid) {
+			return;
+		}
+		invoiceRepository.flush();
+		InvoiceTotalRow row = invoiceRepository.findTotalAmounts(List.of(invoice.getInvoiceId())).get(0);
+		invoice.setTotalAmount(row.getTotalAmount());
+		BigDecimal total = row.getTotalAmount() == null ? BigDecimal.ZERO : row.getTotalAmount();
+		addToUsedLimit(invoice.getCreditCard(), paid ? total.negate() : total);
+		logger.debug("### Invoice {} {} : {} moved on used limit", invoice.getInvoiceId(), invoice.getStatus(), total);
+	}
+
+	/**
+	 * Recompute invoice totals from their billed lines with one aggregate update, then reconcile the card used limit
+	 * For totals that drifted from their lines; regular writes go through the deltas above
+	 * @param card the card of the invoices
+	 * @param invoiceIds invoices to recompute, ids of other cards are ignored
+	 * @return the recomputed totals
+	 */
+	@Transactional
+	public List<InvoiceTotalRow> recomputeTotals(CreditCard card, Collection<Long> invoiceIds) {
+		if (invoiceIds.isEmpty()) {
+			return List.of();
+		}
+		int updated = invoiceRepository.recomputeTotalAmounts(card.getCardId(), invoiceIds);
+		creditcardRepository.reconcileUsedLimit(card.getCardId());
+		card.setUsedLimit(creditcardRepository.findUsedLimit(card.getCardId()));
+		logger.debug("### {} invoice totals of card {} recomputed, used limit {}", updated, card.getCardId(), card.getUsedLimit());
+		return invoiceRepository.findTotalAmounts(invoiceIds);
+	}
+
+	private void apply(CreditCard card, Collection<CreditPurchase> purchases, boolean remove) {
+		Map<Long, BigDecimal> deltas = new TreeMap<>();
+		Map<Long, Invoice> invoices = new HashMap<>();
+		for (CreditPurchase purchase : purchases) {
+			collect(purchase, remove, deltas, invoices);
+		}
+		applyDeltas(card, deltas, invoices);
+	}
+
+	// installment values when the purchase has installments, the purchase value on each of its invoices otherwise
+	private static void collect(CreditPurchase purchase, boolean remove, Map<Long, BigDecimal> deltas, Map<Long, Invoice> invoices) {
+		if (purchase.getInstallments().isEmpty()) {
+			for (Invoice invoice : purchase.getInvoices()) {
+				invoices.put(invoice.getInvoiceId(), invoice);
+				deltas.merge(invoice.getInvoiceId(), signed(purchase.getValue(), remove), BigDecimal::add);
+			}
+		} else {
+			for (Installment installment : purchase.getInstallments()) {
+				invoices.put(installment.getInvoice().getInvoiceId(), installment.getInvoice());
+				deltas.merge(installment.getInvoice().getInvoiceId(), signed(installment.getValue(), remove), BigDecimal::add);
+			}
+		}
+	}
+
+	// invoices in id order, then the card : concurrent writers take the row locks in the same order
+	private void applyDeltas(CreditCard card, Map<Long, BigDecimal> deltas, Map<Long, Invoice> invoices) {
+		if (deltas.isEmpty()) {
+			return;
+		}
+		deltas.forEach(invoiceRepository::addToTotalAmount);
+
+		// statuses read under the row locks just taken, a concurrent status change waits for this transaction
+		BigDecimal usedLimitDelta = BigDecimal.ZERO;
+		for (InvoiceTotalRow row : invoiceRepository.findTotalAmounts(deltas.keySet())) {
+			// invoices a changed purchase left are not in the map, their entity is not read again here
+			Invoice invoice = invoices.get(row.getInvoiceId());
+			if (invoice != null) {
+				invoice.setTotalAmount(row.getTotalAmount());
+			}
+			if (row.getStatus() != InvoiceStatus.PAID) {
+				usedLimitDelta = usedLimitDelta.add(deltas.get(row.getInvoiceId()));
+			}
+		}
+		if (usedLimitDelta.signum() != 0) {
+			addToUsedLimit(card, usedLimitDelta);
+		}
+		logger.debug("### {} invoice totals and used limit of card {} moved by {}", deltas.size(), card.getCardId(), usedLimitDelta);
+	}
+
+	private void addToUsedLimit(CreditCard card, BigDecimal delta) {
+		creditcardRepository.addToUsedLimit(card.getCardId(), delta);
+		card.setUsedLimit(creditcardRepository.findUsedLimit(card.getCardId()));
+	}
+
+	private static BigDecimal signed(BigDecimal value, boolean negate) {
+		return negate ? value.negate() : value;
+	}
+}
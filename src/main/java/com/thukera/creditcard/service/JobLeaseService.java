@@ -0,0 +1,56 @@
+package com.thukera.creditcard.service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.repository.JobLeaseRepository;
+
+/**
+ * Database row leases for scheduled jobs running on several instances
+ * The lease is kept until it expires, so instances firing the same schedule run the job once per lease
+ */
+@Service
+public class JobLeaseService {
+
+	private static final Logger logger = LogManager.getLogger(JobLeaseService.class);
+
+	// pid@host, unique per running instance
+	private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+	@Autowired
+	private JobLeaseRepository jobLeaseRepository;
+
+	/**
+	 * Take the lease of a job for this instance
+	 * @param jobName the job
+	 * @param duration how long the lease is held
+	 * @return true when this instance holds the lease and should run the job
+	 */
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public boolean tryAcquire(String jobName, Duration duration) {
+		return tryAcquire(jobName, owner, LocalDateTime.now(), duration);
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	@Transactional
+	boolean tryAcquire(String jobName, String owner, LocalDateTime now, Duration duration) {
+		LocalDateTime until = now.plus(duration);
+		int acquired = jobLeaseRepository.acquire(jobName, owner, now, until);
+		if (acquired == 0) {
+			acquired = jobLeaseRepository.insertIfAbsent(jobName, owner, until);
+		}
+		logger.debug("### Lease {} for {} until {} : {}", jobName, owner, until, acquired == 1 ? "acquired" : "held elsewhere");
+		return acquired == 1;
+	}
+}
@@ -0,0 +1,86 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.thukera.creditcard.model.dto.CategoryDeltaRow;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.repository.RecurringChargeRepository;
+
+/**
+ * Bills the recurring charges of a card on its invoices
+ * Every charge active on a cycle becomes one purchase of that cycle, written with set based statements.
+ * Idempotent per cycle : charges already billed are skipped, and tb_credit_purchase keeps a single
+ * purchase per (charge, cycle) when two transactions bill the same cycle at once
+ */
+@Service
+public class RecurringChargeService {
+
+	private static final Logger logger = LogManager.getLogger(RecurringChargeService.class);
+
+	@Autowired
+	private RecurringChargeRepository recurringChargeRepository;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
+	@Autowired
+	private InvoiceTotalsService invoiceTotalsService;
+
+	/**
+	 * Bill the card's recurring charges on the cycles of new invoices
+	 * Invoices must be flushed; their totals and the card used limit are incremented in place
+	 * @param card the credit card
+	 * @param invoices non retroactive invoices of the card
+	 * @return number of purchases billed
+	 */
+	@Transactional
+	public int billCycles(CreditCard card, Collection<Invoice> invoices) {
+		if (invoices.isEmpty()) {
+			return 0;
+		}
+		LocalDate from = invoices.stream().map(Invoice::getStartDate).min(LocalDate::compareTo).orElseThrow();
+		LocalDate to = invoices.stream().map(Invoice::getEndDate).max(LocalDate::compareTo).orElseThrow();
+		if (!recurringChargeRepository.existsActive(card.getCardId(), from, to)) {
+			logger.debug("### Card {} has no recurring charges from {} to {}", card.getCardId(), from, to);
+			return 0;
+		}
+		int billed = 0;
+		for (Invoice invoice : invoices) {
+			billed += billCycle(invoice);
+		}
+		return billed;
+	}
+
+	private int billCycle(Invoice invoice) {
+		Long cardId = invoice.getCreditCard().getCardId();
+		LocalDate cycleStart = invoice.getStartDate();
+
+		int inserted = recurringChargeRepository.insertCyclePurchases(cardId, cycleStart, invoice.getEndDate(),
+				cycleStart.withDayOfMonth(1), cycleStart.lengthOfMonth());
+		List<CategoryDeltaRow> totals = recurringChargeRepository.findUnbilledCycleTotals(cardId, cycleStart);
+		if (totals.isEmpty()) {
+			logger.debug("### No recurring charges to bill on cycle {} of card {}", cycleStart, cardId);
+			return 0;
+		}
+		int linked = recurringChargeRepository.linkCyclePurchases(invoice.getInvoiceId(), cardId, cycleStart);
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (CategoryDeltaRow row : totals) {
+			invoiceSummaryService.addCategoryTotal(invoice, row.getCategoryId(), row.getTotalValue(), row.getPurchaseCount().intValue());
+			total = total.add(row.getTotalValue());
+		}
+		invoiceTotalsService.addToInvoice(invoice, total);
+		logger.debug("### Cycle {} of card {} : {} recurring purchases created, {} billed, total {}", cycleStart, cardId, inserted, linked, total);
+		return linked;
+	}
+}
@@ -0,0 +1,181 @@
+package com.thukera.creditcard.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thukera.creditcard.model.dto.InstallmentDTOFromInvoice;
+import com.thukera.creditcard.model.dto.InvoiceExportRow;
+import com.thukera.creditcard.model.dto.PurchaseDTOFromInvoice;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.repository.InvoiceRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Streams card and invoice history straight to the response
+ * Rows are read forward only and written as they arrive, heap use does not grow with history length
+ */
+@Service
+public class StatementExportService {
+
+	private static final Logger logger = LogManager.getLogger(StatementExportService.class);
+
+	// same date format as the invoice DTOs
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private CreditCardService creditCardService;
+
+	@Autowired
+	private InvoiceService invoiceService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionTemplate readOnlyTransaction;
+
+	@PostConstruct
+	void init() {
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+	}
+
+	/**
+	 * Export a card with every invoice and purchase it ever had
+	 * Ownership is checked on the request thread, rows are streamed when the body is written
+	 * @param cardId the card id
+	 * @return body writing {"creditcard":{...},"invoices":[...]}
+	 */
+	public StreamingResponseBody exportCard(Long cardId) {
+		CreditCard card = creditCardService.getCreditCardEntityById(cardId);
+		Long id = card.getCardId();
+		String nickname = card.getNickname();
+		logger.debug("### Exporting history of card: {}", id);
+
+		return out -> stream(out, generator -> {
+			generator.writeStartObject();
+			writeCreditCard(generator, id, nickname);
+			generator.writeArrayFieldStart("invoices");
+			writeInvoices(generator, invoiceRepository::streamCardExport, id);
+			generator.writeEndArray();
+			generator.writeEndObject();
+		});
+	}
+
+	/**
+	 * Export one invoice with all its purchases
+	 * @param invoiceId the invoice id
+	 * @return body writing the invoice object with its purchases array
+	 */
+	public StreamingResponseBody exportInvoice(Long invoiceId) {
+		Invoice invoice = invoiceService.getInvoiceEntityById(invoiceId);
+		Long id = invoice.getInvoiceId();
+		logger.debug("### Exporting invoice: {}", id);
+
+		return out -> stream(out, generator -> writeInvoices(generator, invoiceRepository::streamInvoiceExport, id));
+	}
+
+	private void stream(OutputStream out, JsonWriter writer) throws IOException {
+		try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+			readOnlyTransaction.executeWithoutResult(status -> {
+				try {
+					writer.write(generator);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// Rows come ordered by invoice - an invoice object is closed when the next one starts
+	private void writeInvoices(JsonGenerator generator, Function<Long, Stream<InvoiceExportRow>> query, Long id)
+			throws IOException {
+		try (Stream<InvoiceExportRow> rows = query.apply(id)) {
+			Long currentInvoice = null;
+			for (InvoiceExportRow row : (Iterable<InvoiceExportRow>) rows::iterator) {
+				if (!Objects.equals(currentInvoice, row.getInvoiceId())) {
+					if (currentInvoice != null) {
+						writeInvoiceEnd(generator);
+					}
+					writeInvoiceStart(generator, row);
+					currentInvoice = row.getInvoiceId();
+				}
+				if (row.getPurchaseId() != null) {
+					generator.writeObject(toPurchase(row));
+				}
+			}
+			if (currentInvoice != null) {
+				writeInvoiceEnd(generator);
+			}
+		}
+		generator.flush();
+	}
+
+	private void writeCreditCard(JsonGenerator generator, Long cardId, String nickname) throws IOException {
+		generator.writeObjectFieldStart("creditcard");
+		generator.writeNumberField("id", cardId);
+		generator.writeStringField("nickname", nickname);
+		generator.writeEndObject();
+	}
+
+	private void writeInvoiceStart(JsonGenerator generator, InvoiceExportRow row) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("invoiceId", row.getInvoiceId());
+		generator.writeStringField("startDate", format(row.getStartDate()));
+		generator.writeStringField("endDate", format(row.getEndDate()));
+		generator.writeStringField("dueDate", format(row.getDueDate()));
+		generator.writeStringField("status", row.getStatus() != null ? row.getStatus().name() : null);
+		generator.writeNumberField("totalAmount", row.getTotalAmount());
+		generator.writeNumberField("estimateLimit", row.getEstimateLimit());
+		writeCreditCard(generator, row.getCardId(), row.getNickname());
+		generator.writeArrayFieldStart("purchases");
+	}
+
+	private void writeInvoiceEnd(JsonGenerator generator) throws IOException {
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private static PurchaseDTOFromInvoice toPurchase(InvoiceExportRow row) {
+		InstallmentDTOFromInvoice installment = row.getInstallmentId() != null
+				? new InstallmentDTOFromInvoice(row.getInstallmentId(), row.getCurrentInstallment(),
+						row.getTotalInstallment(), row.getInstallmentValue())
+				: null;
+		return new PurchaseDTOFromInvoice(row.getPurchaseId(), row.getDescricao(), row.getPurchaseValue(),
+				row.getPurchaseDateTime(), row.getCategory(), installment);
+	}
+
+	private static String format(LocalDate date) {
+		return date != null ? DATE_FORMAT.format(date) : null;
+	}
+
+	@FunctionalInterface
+	private interface JsonWriter {
+		void write(JsonGenerator generator) throws IOException;
+	}
+}
@@ -0,0 +1,149 @@
+package com.thukera.creditcard.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.thukera.creditcard.model.dto.PurchaseBatchItemDTO;
+import com.thukera.creditcard.model.dto.PurchaseBatchResultDTO;
+import com.thukera.creditcard.model.dto.StatementImportResultDTO;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.creditcard.statement.StatementLine;
+import com.thukera.creditcard.statement.StatementReader;
+
+/**
+ * Imports card statement files (CSV or OFX) into purchases
+ * The file is read line by line and written in chunks through the purchase batch path,
+ * each chunk in its own transaction, so memory stays flat whatever the file size
+ */
+@Service
+public class StatementImportService {
+
+	private static final Logger logger = LogManager.getLogger(StatementImportService.class);
+
+	private static final int MAX_REPORTED_ERRORS = 100;
+
+	static final String DEFAULT_CATEGORY = "Outros";
+
+	@Autowired
+	private CreditCardService creditCardService;
+
+	@Autowired
+	private CreditPurchaseService creditPurchaseService;
+
+	/**
+	 * Import a statement into the card
+	 * A line "Store 03/10" is the 3rd of 10 installments. By default only the first installment
+	 * of a plan creates it, later ones were billed by that purchase. With includeOngoing, plans
+	 * already running are created from their first cycle - for the first import of a card.
+	 * @param cardId the card ID
+	 * @param input statement content
+	 * @param includeOngoing create plans whose first installment is not in the file
+	 * @return StatementImportResultDTO
+	 * @throws NotFoundException if card not found or not owned by the user
+	 */
+	public StatementImportResultDTO importStatement(Long cardId, InputStream input, boolean includeOngoing) {
+		CreditCard card = creditCardService.getCreditCardEntityById(cardId);
+		logger.debug("### Importing statement into card: {}", card.getCardId());
+
+		Progress progress = new Progress();
+		List<CreditPurchaseForm> chunk = new ArrayList<>(CreditPurchaseService.MAX_BATCH_SIZE);
+		List<Long> chunkLines = new ArrayList<>(CreditPurchaseService.MAX_BATCH_SIZE);
+
+		try (StatementReader reader = StatementReader.open(input)) {
+			while (reader.hasNext()) {
+				StatementLine line = reader.next();
+				progress.lines++;
+				if (!line.isValid()) {
+					progress.reject(line.lineNumber(), line.error());
+					continue;
+				}
+				CreditPurchaseForm form = toForm(line, card.getCardId(), includeOngoing);
+				if (form == null) {
+					progress.skipped++;
+					continue;
+				}
+				chunk.add(form);
+				chunkLines.add(line.lineNumber());
+				if (chunk.size() == CreditPurchaseService.MAX_BATCH_SIZE) {
+					write(chunk, chunkLines, progress);
+				}
+			}
+			if (!chunk.isEmpty()) {
+				write(chunk, chunkLines, progress);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not read statement", e);
+		}
+
+		logger.debug("### Statement imported - lines {} created {} skipped {} rejected {}",
+				progress.lines, progress.created, progress.skipped, progress.rejected);
+		return new StatementImportResultDTO(progress.lines, progress.created, progress.skipped, progress.rejected, progress.errors);
+	}
+
+	private void write(List<CreditPurchaseForm> chunk, List<Long> chunkLines, Progress progress) {
+		PurchaseBatchResultDTO result = creditPurchaseService.createPurchases(chunk);
+		progress.created += result.getCreated();
+		for (PurchaseBatchItemDTO item : result.getItems()) {
+			if (PurchaseBatchItemDTO.REJECTED.equals(item.getStatus())) {
+				progress.reject(chunkLines.get(item.getIndex()), item.getMessage());
+			}
+		}
+		logger.debug("### Chunk of {} written, {} purchases so far", chunk.size(), progress.created);
+		chunk.clear();
+		chunkLines.clear();
+	}
+
+	/**
+	 * Map a statement line to a purchase form
+	 * @return the form, or null when the line is not a purchase to create
+	 */
+	static CreditPurchaseForm toForm(StatementLine line, Long cardId, boolean includeOngoing) {
+		// payments and refunds
+		if (line.value().signum() <= 0) {
+			return null;
+		}
+		if (line.hasInstallments() && line.installment() > 1 && !includeOngoing) {
+			return null;
+		}
+
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setCreditCardId(cardId);
+		form.setDescricao(line.description());
+		form.setCategory(line.category() != null ? line.category() : DEFAULT_CATEGORY);
+		if (line.hasInstallments()) {
+			// the line carries one installment, the plan starts installment - 1 cycles earlier
+			form.setTotalInstallments(line.totalInstallments());
+			form.setValue(line.value().multiply(BigDecimal.valueOf(line.totalInstallments())));
+			form.setPurchaseDateTime(line.date().minusMonths(line.installment() - 1L).atStartOfDay());
+		} else {
+			form.setTotalInstallments(1);
+			form.setValue(line.value());
+			form.setPurchaseDateTime(line.date().atStartOfDay());
+		}
+		return form;
+	}
+
+	private static class Progress {
+		private long lines;
+		private long created;
+		private long skipped;
+		private long rejected;
+		private final List<String> errors = new ArrayList<>();
+
+		private void reject(long lineNumber, String message) {
+			rejected++;
+			if (errors.size() < MAX_REPORTED_ERRORS) {
+				errors.add("line " + lineNumber + ": " + message);
+			}
+		}
+	}
+}
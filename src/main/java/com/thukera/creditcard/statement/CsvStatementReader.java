@@ -0,0 +1,131 @@
+package com.thukera.creditcard.statement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV statement, comma or semicolon separated
+ * Columns are taken from a header (date/data, title/description/descricao, amount/value/valor, category/categoria)
+ * or, without header, read as date, description, value
+ */
+class CsvStatementReader extends StatementReader {
+
+	private char delimiter;
+	private int dateColumn = 0;
+	private int descriptionColumn = 1;
+	private int valueColumn = 2;
+	private int categoryColumn = -1;
+
+	private boolean started;
+	private String pending;
+	private long lineNumber;
+
+	CsvStatementReader(BufferedReader reader) {
+		super(reader);
+	}
+
+	@Override
+	protected StatementLine readLine() throws IOException {
+		if (!started) {
+			started = true;
+			String first = nextNonBlank();
+			if (first == null) {
+				return null;
+			}
+			delimiter = count(first, ';') > count(first, ',') ? ';' : ',';
+			List<String> fields = split(first);
+			if (parseDate(fields.get(0)) == null) {
+				readHeader(fields);
+			} else {
+				pending = first;
+			}
+		}
+
+		String text = pending != null ? pending : nextNonBlank();
+		pending = null;
+		if (text == null) {
+			return null;
+		}
+
+		List<String> fields = split(text);
+		int needed = Math.max(Math.max(dateColumn, descriptionColumn), Math.max(valueColumn, categoryColumn));
+		if (fields.size() <= needed) {
+			return StatementLine.invalid(lineNumber, "Expected " + (needed + 1) + " columns");
+		}
+		LocalDate date = parseDate(fields.get(dateColumn));
+		if (date == null) {
+			return StatementLine.invalid(lineNumber, "Invalid date: " + fields.get(dateColumn));
+		}
+		BigDecimal value = parseAmount(fields.get(valueColumn));
+		if (value == null) {
+			return StatementLine.invalid(lineNumber, "Invalid value: " + fields.get(valueColumn));
+		}
+		String category = categoryColumn >= 0 && !fields.get(categoryColumn).isBlank() ? fields.get(categoryColumn).strip() : null;
+		return line(lineNumber, date, fields.get(descriptionColumn), value, category);
+	}
+
+	private void readHeader(List<String> header) {
+		dateColumn = descriptionColumn = valueColumn = -1;
+		for (int i = 0; i < header.size(); i++) {
+			switch (normalize(header.get(i))) {
+				case "date", "data" -> dateColumn = i;
+				case "title", "description", "descricao", "estabelecimento", "lancamento" -> descriptionColumn = i;
+				case "amount", "value", "valor" -> valueColumn = i;
+				case "category", "categoria" -> categoryColumn = i;
+				default -> { }
+			}
+		}
+		if (dateColumn < 0 || descriptionColumn < 0 || valueColumn < 0) {
+			throw new IllegalArgumentException("CSV header must name date, description and value columns");
+		}
+	}
+
+	private String nextNonBlank() throws IOException {
+		String text;
+		do {
+			text = reader.readLine();
+			lineNumber++;
+		} while (text != null && text.isBlank());
+		return text;
+	}
+
+	// quote aware split, "" inside quotes is a literal quote
+	private List<String> split(String text) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == delimiter && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private static int count(String text, char c) {
+		return (int) text.chars().filter(ch -> ch == c).count();
+	}
+
+	private static String normalize(String name) {
+		return Normalizer.normalize(name.strip().replace("\uFEFF", ""), Normalizer.Form.NFD)
+				.replaceAll("\\p{M}", "")
+				.toLowerCase();
+	}
+}
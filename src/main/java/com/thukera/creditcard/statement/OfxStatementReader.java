@@ -0,0 +1,102 @@
+package com.thukera.creditcard.statement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * OFX statement (SGML or XML flavour), one STMTTRN block per transaction
+ * Card statements post charges as negative TRNAMT, they are returned as positive values
+ */
+class OfxStatementReader extends StatementReader {
+
+	private static final DateTimeFormatter OFX_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+	private final StringBuilder token = new StringBuilder();
+	private long transactions;
+
+	OfxStatementReader(BufferedReader reader) {
+		super(reader);
+	}
+
+	@Override
+	protected StatementLine readLine() throws IOException {
+		String posted = null;
+		String amount = null;
+		String name = null;
+		String memo = null;
+		boolean inTransaction = false;
+
+		String tag;
+		while ((tag = nextTag()) != null) {
+			String value = token.toString().strip();
+			switch (tag) {
+				case "STMTTRN" -> {
+					inTransaction = true;
+					transactions++;
+				}
+				case "/STMTTRN" -> {
+					if (inTransaction) {
+						return toLine(posted, amount, memo != null && !memo.isEmpty() ? memo : name);
+					}
+				}
+				case "DTPOSTED" -> posted = value;
+				case "TRNAMT" -> amount = value;
+				case "NAME" -> name = value;
+				case "MEMO" -> memo = value;
+				default -> { }
+			}
+		}
+		return null;
+	}
+
+	private StatementLine toLine(String posted, String amount, String description) {
+		LocalDate date = null;
+		if (posted != null && posted.length() >= 8) {
+			try {
+				date = LocalDate.parse(posted.substring(0, 8), OFX_DATE);
+			} catch (DateTimeParseException e) {
+				// reported below
+			}
+		}
+		if (date == null) {
+			return StatementLine.invalid(transactions, "Invalid DTPOSTED: " + posted);
+		}
+		BigDecimal value = amount != null ? parseAmount(amount) : null;
+		if (value == null) {
+			return StatementLine.invalid(transactions, "Invalid TRNAMT: " + amount);
+		}
+		return line(transactions, date, description, value.negate(), null);
+	}
+
+	/**
+	 * Advance to the next tag, leaving the text that follows it in token
+	 * @return tag name upper case, or null at end of stream
+	 */
+	private String nextTag() throws IOException {
+		int c;
+		while ((c = reader.read()) != -1 && c != '<') {
+			// text outside of a tag value (headers, whitespace)
+		}
+		if (c == -1) {
+			return null;
+		}
+		StringBuilder name = new StringBuilder();
+		while ((c = reader.read()) != -1 && c != '>') {
+			name.append((char) c);
+		}
+		token.setLength(0);
+		reader.mark(1);
+		while ((c = reader.read()) != -1 && c != '<') {
+			token.append((char) c);
+			reader.mark(1);
+		}
+		if (c == '<') {
+			reader.reset();
+		}
+		return name.toString().strip().toUpperCase();
+	}
+}
@@ -0,0 +1,26 @@
+package com.thukera.creditcard.statement;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One transaction read from a card statement file
+ * value is positive for charges, negative for payments and refunds
+ * installment / totalInstallments are 0 when the description has no "03/10" marker
+ * error is set instead of the other fields when the line could not be read
+ */
+public record StatementLine(long lineNumber, LocalDate date, String description, BigDecimal value, String category,
+		int installment, int totalInstallments, String error) {
+
+	static StatementLine invalid(long lineNumber, String error) {
+		return new StatementLine(lineNumber, null, null, null, null, 0, 0, error);
+	}
+
+	public boolean isValid() {
+		return error == null;
+	}
+
+	public boolean hasInstallments() {
+		return totalInstallments > 1;
+	}
+}
@@ -0,0 +1,156 @@
+package com.thukera.creditcard.statement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a card statement one transaction at a time, memory does not grow with the file
+ * The format (OFX or CSV) is detected from the start of the stream
+ */
+public abstract class StatementReader implements Iterator<StatementLine>, AutoCloseable {
+
+	// "Loja 03/10", "Loja - Parcela 3/10", "Loja PARC 03/10" at the end of the description
+	private static final Pattern INSTALLMENT_MARKER = Pattern.compile(
+			"(?:\\s*-\\s*|\\s+)(?:parcela\\s+|parc\\.?\\s*)?(\\d{1,2})\\s*/\\s*(\\d{1,2})\\s*$", Pattern.CASE_INSENSITIVE);
+
+	// strict, so 31/02 is an error instead of the last day of February
+	private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+			DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT),
+			DateTimeFormatter.ISO_LOCAL_DATE,
+			DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT),
+			DateTimeFormatter.ofPattern("dd/MM/uu").withResolverStyle(ResolverStyle.STRICT));
+
+	private static final int PEEK_SIZE = 1024;
+
+	protected final BufferedReader reader;
+
+	private StatementLine next;
+
+	protected StatementReader(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Open a reader for the statement, OFX when the stream starts with an OFX header, CSV otherwise
+	 * @param input statement content, UTF-8
+	 * @return StatementReader, to be closed by the caller
+	 */
+	public static StatementReader open(InputStream input) {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		try {
+			reader.mark(PEEK_SIZE);
+			char[] head = new char[PEEK_SIZE];
+			int read = reader.read(head);
+			reader.reset();
+			String start = read > 0 ? new String(head, 0, read).stripLeading().toUpperCase() : "";
+			return start.startsWith("OFXHEADER") || start.startsWith("<OFX") || start.startsWith("<?XML")
+					? new OfxStatementReader(reader)
+					: new CsvStatementReader(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read the next transaction
+	 * @return the line, or null at the end of the statement
+	 */
+	protected abstract StatementLine readLine() throws IOException;
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = readLine();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public StatementLine next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		StatementLine line = next;
+		next = null;
+		return line;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Build a line, splitting an installment marker off the description
+	 */
+	protected static StatementLine line(long lineNumber, LocalDate date, String description, BigDecimal value, String category) {
+		String text = description == null ? "" : description.strip();
+		int installment = 0;
+		int totalInstallments = 0;
+		Matcher marker = INSTALLMENT_MARKER.matcher(text);
+		if (marker.find()) {
+			int current = Integer.parseInt(marker.group(1));
+			int total = Integer.parseInt(marker.group(2));
+			if (current >= 1 && total > 1 && current <= total) {
+				installment = current;
+				totalInstallments = total;
+				text = text.substring(0, marker.start()).strip();
+			}
+		}
+		if (text.isEmpty()) {
+			return StatementLine.invalid(lineNumber, "Description is required");
+		}
+		return new StatementLine(lineNumber, date, text, value, category, installment, totalInstallments, null);
+	}
+
+	protected static LocalDate parseDate(String text) {
+		String value = text.strip();
+		for (DateTimeFormatter format : DATE_FORMATS) {
+			try {
+				return LocalDate.parse(value, format);
+			} catch (DateTimeParseException e) {
+				// next format
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parse "1.234,56", "1,234.56", "1234.56" or "R$ -12,30"
+	 * @return amount with scale 2, or null if not a number
+	 */
+	protected static BigDecimal parseAmount(String text) {
+		String value = text.replace("R$", "").replace(" ", "").replace("\u00A0", "").strip();
+		int comma = value.lastIndexOf(',');
+		int dot = value.lastIndexOf('.');
+		if (comma > dot) {
+			value = value.replace(".", "").replace(',', '.');
+		} else {
+			value = value.replace(",", "");
+		}
+		try {
+			return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -1,10 +1,7 @@
 package com.thukera.panel.controller;
 
-import java.time.LocalDate;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,20 +9,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.thukera.creditcard.repository.CreditcardRepository;
-import com.thukera.creditcard.repository.InvoiceRepository;
-import com.thukera.panel.dto.PanelCreditCardDTOFromUser;
 import com.thukera.panel.dto.PanelUserDTO;
+import com.thukera.panel.service.PanelService;
 import com.thukera.root.model.messages.NotFoundException;
-import com.thukera.user.model.entities.User;
-import com.thukera.user.repository.UserRepository;
+import com.thukera.user.service.AuthenticationHelper;
 
 @RestController
 @RequestMapping("/api/panel")
@@ -33,14 +25,11 @@ public class PanelController {
 	
 	private static final Logger logger = LogManager.getLogger(PanelController.class);
 
-	//@Autowired
-	//private CreditcardRepository creditcardRepository;
-	
 	@Autowired
-	private InvoiceRepository invoiceRepository;
+	private PanelService panelService;
 
 	@Autowired
-	private UserRepository userRepository;
+	private AuthenticationHelper authHelper;
 	
 	@GetMapping
 	@PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
@@ -49,24 +38,12 @@ public class PanelController {
 		logger.debug("######## ### GET PANEL DETAILS BY TOKEN ### ########");
 
 		try {
-			// 1. Recover authenticated user from SecurityContext
-			Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-			logger.debug("### Auth : " + authentication);
-			String username = authentication.getName(); // usually the "username" from your JWT
-			logger.debug("### Username From Token : " + username);
+			// 1. Recover authenticated user id from the token principal
+			Long userId = authHelper.getCurrentUserId();
+			logger.debug("### User Id From Token : " + userId);
 
-			// 2. Fetch User from DB
-			User user = userRepository.findByUsername(username).orElseThrow(() -> new NotFoundException("User not found"));
-			logger.debug("### Username From Entity : " + user.getUsername());
-			
-			PanelUserDTO panelUserDTO = PanelUserDTO.fromEntity(user);
-			
-			List<PanelCreditCardDTOFromUser> creditcards = panelUserDTO.getCreditcards();
-			for (int i = 0; i < creditcards.size(); i++) {
-				Long cardID = creditcards.get(i).getId();
-				Optional<Long> invoiceId = (invoiceRepository.findTargetInvoiceId(cardID, LocalDate.now()));
-				creditcards.get(i).setCurrentInvoice(invoiceId);		
-			}
+			// 2. Single read model query - user, cards and current invoices
+			PanelUserDTO panelUserDTO = panelService.getHomePanel(userId);
 			return ResponseEntity.ok(panelUserDTO);
 
 		} catch (TransactionSystemException e) {
@@ -23,6 +23,8 @@ public class PanelCreditCardDTOFromUser {
 	private BigDecimal totalLimit;
 	private LocalDate dataCadastro;
 	private Optional<Long> currentInvoice;
+	private BigDecimal currentInvoiceTotal;
+	private BigDecimal currentInvoiceEstimateLimit;
 
 	public static PanelCreditCardDTOFromUser fromEntity(CreditCard card) {
 		return new PanelCreditCardDTOFromUser(
@@ -34,7 +36,24 @@ public class PanelCreditCardDTOFromUser {
 				card.getBillingPeriodEnd(), 
 				card.getTotalLimit(),
 				card.getDataCadastro(),
-				Optional.empty());
+				Optional.empty(),
+				null,
+				null);
+	}
+
+	public static PanelCreditCardDTOFromUser fromRow(PanelRow row) {
+		return new PanelCreditCardDTOFromUser(
+				row.getCardId(), 
+				row.getNickname(), 
+				row.getBank(), 
+				row.getEndnumbers(),
+				row.getBillingPeriodStart(), 
+				row.getBillingPeriodEnd(), 
+				row.getTotalLimit(),
+				row.getDataCadastro(),
+				Optional.ofNullable(row.getInvoiceId()),
+				row.getInvoiceTotal(),
+				row.getInvoiceEstimateLimit());
 	}
 
 }
@@ -0,0 +1,30 @@
+package com.thukera.panel.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection row of the home panel query
+ * One row per credit card (user columns repeated), card columns null when user has no cards
+ */
+public interface PanelRow {
+
+	Long getUserId();
+	String getUsername();
+	String getEmail();
+	String getProfilePicturePath();
+
+	Long getCardId();
+	String getNickname();
+	String getBank();
+	String getEndnumbers();
+	Integer getBillingPeriodStart();
+	Integer getBillingPeriodEnd();
+	BigDecimal getTotalLimit();
+	LocalDate getDataCadastro();
+
+	Long getInvoiceId();
+	BigDecimal getInvoiceTotal();
+	BigDecimal getInvoiceEstimateLimit();
+
+}
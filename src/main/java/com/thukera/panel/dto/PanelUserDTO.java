@@ -1,6 +1,9 @@
 package com.thukera.panel.dto;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.thukera.user.model.entities.User;
@@ -25,4 +28,17 @@ public class PanelUserDTO {
 				user.getCreditcards().stream().map(PanelCreditCardDTOFromUser::fromEntity).collect(Collectors.toList()));
 	}
 
+	// Rows come from PanelRepository - first row per card wins if invoices overlap
+	public static PanelUserDTO fromRows(List<PanelRow> rows) {
+		PanelRow header = rows.get(0);
+		Map<Long, PanelCreditCardDTOFromUser> cards = new LinkedHashMap<>();
+		for (PanelRow row : rows) {
+			if (row.getCardId() != null) {
+				cards.putIfAbsent(row.getCardId(), PanelCreditCardDTOFromUser.fromRow(row));
+			}
+		}
+		return new PanelUserDTO(header.getUserId(), header.getUsername(), header.getEmail(),
+				header.getProfilePicturePath(), new ArrayList<>(cards.values()));
+	}
+
 }
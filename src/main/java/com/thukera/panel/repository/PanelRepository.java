@@ -0,0 +1,33 @@
+package com.thukera.panel.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.thukera.panel.dto.PanelRow;
+import com.thukera.user.model.entities.User;
+
+/**
+ * Read model for the home panel - user header, cards and current invoice in a single query
+ */
+@Repository
+public interface PanelRepository extends org.springframework.data.repository.Repository<User, Long> {
+
+	@Query("""
+			SELECT u.id AS userId, u.username AS username, u.email AS email, u.profilePicturePath AS profilePicturePath,
+			       c.cardId AS cardId, c.nickname AS nickname, c.bank AS bank, c.endnumbers AS endnumbers,
+			       c.billingPeriodStart AS billingPeriodStart, c.billingPeriodEnd AS billingPeriodEnd,
+			       c.totalLimit AS totalLimit, c.dataCadastro AS dataCadastro,
+			       i.invoiceId AS invoiceId, i.totalAmount AS invoiceTotal, i.estimateLimit AS invoiceEstimateLimit
+			FROM User u
+			LEFT JOIN CreditCard c ON c.user = u
+			LEFT JOIN Invoice i ON i.creditCard = c AND :today BETWEEN i.startDate AND i.endDate
+			WHERE u.id = :userId
+			ORDER BY c.cardId, i.invoiceId
+			""")
+	List<PanelRow> findPanelRows(@Param("userId") Long userId, @Param("today") LocalDate today);
+
+}
@@ -0,0 +1,93 @@
+package com.thukera.panel.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
+import com.thukera.panel.dto.PanelRow;
+import com.thukera.panel.dto.PanelUserDTO;
+import com.thukera.panel.repository.PanelRepository;
+import com.thukera.root.model.messages.NotFoundException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service layer for the home panel
+ * Builds the panel from one projection query, without hydrating entities,
+ * and keeps it per user until one of the user's cards, purchases or invoices changes
+ */
+@Service
+public class PanelService {
+
+	private static final Logger logger = LogManager.getLogger(PanelService.class);
+
+	@Autowired
+	private PanelRepository panelRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${my.finances.app.panelCacheSize:1000}")
+	private long panelCacheSize;
+
+	@Value("${my.finances.app.panelCacheTtl:300}")
+	private long panelCacheTtl; // in seconds
+
+	private Cache<Long, PanelUserDTO> panelCache;
+
+	@PostConstruct
+	void init() {
+		panelCache = Caffeine.newBuilder()
+				.maximumSize(panelCacheSize)
+				.expireAfterWrite(Duration.ofSeconds(panelCacheTtl))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, panelCache, "panel");
+	}
+
+	/**
+	 * Get the home panel of a user
+	 * @param userId the user ID
+	 * @return PanelUserDTO with cards and their current invoice
+	 * @throws NotFoundException if user not found
+	 */
+	public PanelUserDTO getHomePanel(Long userId) {
+		return panelCache.get(userId, this::loadHomePanel);
+	}
+
+	/**
+	 * Drop the cached panel once the change that affects it is committed
+	 * @param event the change event
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onCreditDataChanged(CreditDataChangedEvent event) {
+		logger.debug("### Evicting panel of user: {}", event.getUserId());
+		panelCache.invalidate(event.getUserId());
+	}
+
+	private PanelUserDTO loadHomePanel(Long userId) {
+		logger.debug("### Building panel for user: {}", userId);
+
+		List<PanelRow> rows = panelRepository.findPanelRows(userId, LocalDate.now());
+		if (rows.isEmpty()) {
+			throw new NotFoundException("User not found");
+		}
+
+		PanelUserDTO panelUserDTO = PanelUserDTO.fromRows(rows);
+		logger.debug("### Panel built with {} card(s)", panelUserDTO.getCreditcards().size());
+		return panelUserDTO;
+	}
+}
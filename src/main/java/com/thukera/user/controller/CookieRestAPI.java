@@ -26,6 +26,11 @@ import com.thukera.user.model.entities.User;
 import com.thukera.user.model.forms.LoginForm;
 import com.thukera.user.repository.RoleRepository;
 import com.thukera.user.repository.UserRepository;
+import com.thukera.user.security.service.TokenVersionService;
+import com.thukera.user.security.service.UserDetailsServiceImpl;
+import com.thukera.user.security.service.UserPrinciple;
+
+import io.jsonwebtoken.Claims;
 
 
 import jakarta.servlet.http.HttpServletResponse;
@@ -50,6 +55,12 @@ public class CookieRestAPI {
 	@Autowired
 	JwtProvider jwtProvider;
 
+	@Autowired
+	UserDetailsServiceImpl userDetailsService;
+
+	@Autowired
+	TokenVersionService tokenVersionService;
+
 	@PostMapping("/signin")
 	public ResponseEntity<?> authenticateUser(@RequestBody LoginForm loginRequest, HttpServletResponse response) {
 		
@@ -70,8 +81,9 @@ public class CookieRestAPI {
 
 	    SecurityContextHolder.getContext().setAuthentication(authentication);
 
-	    String accessToken = jwtProvider.generateTokenFromUsername(usuario.get().getUsername(), false);
-	    String refreshToken = jwtProvider.generateTokenFromUsername(usuario.get().getUsername(), true);
+	    UserPrinciple principal = (UserPrinciple) authentication.getPrincipal();
+	    String accessToken = jwtProvider.generateTokenFromPrincipal(principal, false);
+	    String refreshToken = jwtProvider.generateTokenFromPrincipal(principal, true);
 
 	    // Access token cookie (HttpOnly)
 //	    ResponseCookie accessCookie = ResponseCookie.from("access_token", accessToken)
@@ -123,16 +135,21 @@ public class CookieRestAPI {
 	        @CookieValue(value = "refresh_token", required = false) String refreshToken,
 	        HttpServletResponse response) {
 
-	    if (refreshToken == null || !jwtProvider.validateJwtToken(refreshToken)) {
+	    Optional<Claims> claims = jwtProvider.verifyJwtToken(refreshToken);
+	    if (claims.isEmpty()) {
 	        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
 	                .body(Map.of("message", "Invalid refresh token"));
 	    }
 
-	    // Extract username from refresh token
-	    String username = jwtProvider.getUserNameFromJwtToken(refreshToken);
+	    // Reload user from refresh token so new access token carries current roles
+	    UserPrinciple principal = (UserPrinciple) userDetailsService.loadUserByUsername(claims.get().getSubject());
+	    if (!tokenVersionService.isCurrent(principal.getId(), JwtProvider.getTokenVersion(claims.get()))) {
+	        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+	                .body(Map.of("message", "Invalid refresh token"));
+	    }
 
 	    // Generate new access token
-	    String newAccessToken = jwtProvider.generateTokenFromUsername(username, false);
+	    String newAccessToken = jwtProvider.generateTokenFromPrincipal(principal, false);
 
 	    // Create HttpOnly cookie for new access token
 	    ResponseCookie cookie = ResponseCookie.from("access_token", newAccessToken)
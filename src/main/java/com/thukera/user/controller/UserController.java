@@ -15,6 +15,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpStatus;
@@ -34,6 +35,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.thukera.creditcard.model.events.CreditDataChangedEvent;
 import com.thukera.root.model.messages.NotFoundException;
 import com.thukera.user.dto.UserDTO;
 import com.thukera.user.model.entities.Role;
@@ -43,6 +45,7 @@ import com.thukera.user.model.forms.LoginForm;
 import com.thukera.user.model.forms.SignUpForm;
 import com.thukera.user.repository.RoleRepository;
 import com.thukera.user.repository.UserRepository;
+import com.thukera.user.security.service.TokenVersionService;
 
 import jakarta.annotation.Resource;
 
@@ -67,6 +70,13 @@ public class UserController {
 	@Autowired
 	RoleRepository roleRepository;
 
+	@Autowired
+	TokenVersionService tokenVersionService;
+
+	// username, email and picture are part of the cached home panel
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+
 	@Value("${spring.web.resources.static-locations}")
 	private String uploadDir;
 
@@ -170,6 +180,8 @@ public class UserController {
 			usuario.setRoles(roles);
 
 			userRepository.save(usuario);
+			tokenVersionService.revokeTokens(usuario.getId());
+			eventPublisher.publishEvent(new CreditDataChangedEvent(usuario.getId()));
 
 			Map<String, String> body = new HashMap<>();
 			body.put("message", "Usuer Updated Sucessfuly");
@@ -198,6 +210,7 @@ public class UserController {
 			usuario.setPassword(encoder.encode(user.getPassword()));
 		}
 		userRepository.save(usuario);
+		tokenVersionService.revokeTokens(usuario.getId());
 		return gson.toJson("OK");
 	}
 
@@ -244,6 +257,8 @@ public class UserController {
 			});
 			usuario.setRoles(roles);
 			userRepository.save(usuario);
+			tokenVersionService.revokeTokens(usuario.getId());
+			eventPublisher.publishEvent(new CreditDataChangedEvent(usuario.getId()));
 		} catch (Exception e) {
 			e.printStackTrace();
 			return ResponseEntity.badRequest().body("Error! User " + user.getUsername() + " not updated!");
@@ -259,6 +274,8 @@ public class UserController {
 
 		try {
 			userRepository.deleteById(id);
+			tokenVersionService.revokeTokens(id);
+			eventPublisher.publishEvent(new CreditDataChangedEvent(id));
 
 			Map<String, String> body = new HashMap<>();
 			body.put("message", "User Deleted!");
@@ -51,7 +51,7 @@ public class User{
 	@Id
     //@GeneratedValue(strategy = GenerationType.IDENTITY)
 	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
-	@SequenceGenerator(name = "user_seq", sequenceName = "tb_users_id_seq", allocationSize = 1)
+	@SequenceGenerator(name = "user_seq", sequenceName = "tb_users_id_seq", allocationSize = 50)
     private Long id;
 	
 	@NotBlank
@@ -87,6 +87,10 @@ public class User{
     @Column
     private String profilePicturePath;
 
+    // bumped by TokenVersionService to revoke every token issued before the change
+    @Column(name = "token_version", updatable = false)
+    private Integer tokenVersion = 0;
+
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "tb_user_roles", 
         joinColumns = @JoinColumn(name = "user_id"), 
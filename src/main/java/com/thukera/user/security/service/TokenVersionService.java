@@ -0,0 +1,89 @@
+package com.thukera.user.security.service;
+
+import java.time.Duration;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.thukera.user.repository.UserRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Keeps the current token version of each user in memory
+ * A token is only accepted while its version matches; bumping the version revokes
+ * every token issued before. The database column stays the source of truth; versions cached by
+ * other instances are reloaded from it at most tokenVersionCacheTtl seconds later.
+ */
+@Service
+public class TokenVersionService {
+
+	private static final Logger logger = LogManager.getLogger(TokenVersionService.class);
+
+	// users that no longer exist resolve to this, so none of their tokens match
+	private static final int UNKNOWN_USER = -1;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	// Revocation invalidates only this instance's cache : other instances keep accepting the revoked
+	// tokens until their entry expires, so this TTL is the revocation delay across instances
+	@Value("${my.finances.app.tokenVersionCacheTtl:30}")
+	private long tokenVersionCacheTtl; // in seconds
+
+	private LoadingCache<Long, Integer> versions;
+
+	@PostConstruct
+	void init() {
+		versions = Caffeine.newBuilder()
+				.maximumSize(10_000)
+				.expireAfterWrite(Duration.ofSeconds(tokenVersionCacheTtl))
+				.build(this::loadVersion);
+	}
+
+	/**
+	 * Check whether a token version is still the current one for the user
+	 * @param userId the user id from the token
+	 * @param tokenVersion the version from the token
+	 * @return true if the token was not revoked
+	 */
+	public boolean isCurrent(Long userId, int tokenVersion) {
+		if (userId == null) {
+			return false;
+		}
+		return versions.get(userId) == tokenVersion;
+	}
+
+	/**
+	 * Revoke every token issued to the user so far
+	 * @param userId the user id
+	 */
+	@Transactional
+	public void revokeTokens(Long userId) {
+		logger.debug("### Revoking tokens of user: {}", userId);
+		userRepository.incrementTokenVersion(userId);
+		versions.invalidate(userId);
+
+		// a request may reload the old version before this commits, drop it again afterwards
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					versions.invalidate(userId);
+				}
+			});
+		}
+	}
+
+	private Integer loadVersion(Long userId) {
+		return userRepository.findTokenVersionById(userId).orElse(UNKNOWN_USER);
+	}
+}
@@ -1,8 +1,11 @@
 package com.thukera.user.security.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.thukera.config.security.jwt.JwtProvider;
 import com.thukera.user.model.entities.User;
 
+import io.jsonwebtoken.Claims;
+
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -28,6 +31,8 @@ public class UserPrinciple implements UserDetails {
 
     private Collection<? extends GrantedAuthority> authorities;
 
+    private int tokenVersion;
+
     public UserPrinciple(Long id, String name,String username, String email, String password, Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
         this.name = name;
@@ -37,6 +42,11 @@ public class UserPrinciple implements UserDetails {
         this.authorities = authorities;
     }
 
+    public UserPrinciple(Long id, String name,String username, String email, String password, Collection<? extends GrantedAuthority> authorities, int tokenVersion) {
+        this(id, name, username, email, password, authorities);
+        this.tokenVersion = tokenVersion;
+    }
+
     public static UserPrinciple build(User user) {
         List<GrantedAuthority> authorities = user.getRoles().stream().map(role -> new SimpleGrantedAuthority(role.getName().name())).collect(Collectors.toList());
 
@@ -46,7 +56,31 @@ public class UserPrinciple implements UserDetails {
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
-                authorities
+                authorities,
+                user.getTokenVersion() != null ? user.getTokenVersion() : 0
+        );
+    }
+
+    /**
+     * Build a principal straight from verified token claims, without touching the database
+     * Name, email and password are not carried by the token and stay null
+     * @param claims claims of a token minted by JwtProvider
+     * @return UserPrinciple
+     */
+    public static UserPrinciple fromClaims(Claims claims) {
+        List<?> roles = claims.get(JwtProvider.CLAIM_ROLES, List.class);
+        List<GrantedAuthority> authorities = roles == null ? List.of() : roles.stream()
+                .map(role -> new SimpleGrantedAuthority(String.valueOf(role)))
+                .collect(Collectors.toList());
+
+        return new UserPrinciple(
+                claims.get(JwtProvider.CLAIM_USER_ID, Long.class),
+                null,
+                claims.getSubject(),
+                null,
+                null,
+                authorities,
+                JwtProvider.getTokenVersion(claims)
         );
     }
 
@@ -62,6 +96,10 @@ public class UserPrinciple implements UserDetails {
         return email;
     }
 
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     @Override
     public String getUsername() {
         return username;
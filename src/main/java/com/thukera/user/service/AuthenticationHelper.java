@@ -6,10 +6,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import com.thukera.root.model.messages.NotFoundException;
 import com.thukera.user.model.entities.User;
 import com.thukera.user.repository.UserRepository;
+import com.thukera.user.security.service.UserPrinciple;
 
 /**
  * Helper service to handle authentication-related operations
@@ -19,23 +22,62 @@ import com.thukera.user.repository.UserRepository;
 public class AuthenticationHelper {
 
     private static final Logger logger = LogManager.getLogger(AuthenticationHelper.class);
-    
+
+    // request attributes used to resolve the current user once per request
+    private static final String CURRENT_USER_ATTRIBUTE = AuthenticationHelper.class.getName() + ".currentUser";
+    public static final String USER_LOOKUPS_ATTRIBUTE = AuthenticationHelper.class.getName() + ".userLookups";
+
     @Autowired
     private UserRepository userRepository;
 
     /**
      * Get the currently authenticated user from SecurityContext
+     * The entity is loaded at most once per request
      * @return User entity
      * @throws NotFoundException if user not found in database
      */
     public User getCurrentUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            User cached = (User) request.getAttribute(CURRENT_USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String username = getCurrentUsername();
         logger.debug("### Fetching current user: {}", username);
-        
-        return userRepository.findByUsername(username)
+        countUserLookup(request);
+
+        User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new NotFoundException("User not found"));
+
+        if (request != null) {
+            request.setAttribute(CURRENT_USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
+    }
+
+    /**
+     * Get the id of the currently authenticated user
+     * Resolved from the principal in the SecurityContext, no database access
+     * @return user id
+     */
+    public Long getCurrentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrinciple principal
+                && principal.getId() != null) {
+            return principal.getId();
+        }
+        return getCurrentUser().getId();
+    }
+
+    /**
+     * Get a lazy reference to the current user, for associations that only need the id
+     * @return User proxy, not loaded from the database
+     */
+    public User getCurrentUserReference() {
+        return userRepository.getReferenceById(getCurrentUserId());
     }
 
     /**
@@ -75,7 +117,14 @@ public class AuthenticationHelper {
         if (isCurrentUserAdmin()) {
             return true;
         }
-        User currentUser = getCurrentUser();
-        return currentUser.getId().equals(resourceOwnerId);
+        return getCurrentUserId().equals(resourceOwnerId);
+    }
+
+    private void countUserLookup(RequestAttributes request) {
+        if (request == null) {
+            return;
+        }
+        Integer lookups = (Integer) request.getAttribute(USER_LOOKUPS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        request.setAttribute(USER_LOOKUPS_ATTRIBUTE, lookups == null ? 1 : lookups + 1, RequestAttributes.SCOPE_REQUEST);
     }
 }
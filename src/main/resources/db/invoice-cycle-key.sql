@@ -0,0 +1,17 @@
+-- =====================================================================================
+-- One invoice per card and billing cycle : tb_invoice unique on (card_id, start_date, end_date)
+-- Invoices are inserted with INSERT ... ON CONFLICT DO NOTHING against this key, so it
+-- must exist. Run this once BEFORE deploying (PostgreSQL) ; ddl-auto=update may skip
+-- the constraint on an existing table.
+-- =====================================================================================
+
+-- Duplicate cycles created by earlier check-then-insert races - must return no rows.
+-- Merge any duplicate found (move its tb_invoice_purchase, tb_installment and
+-- tb_invoice_category_summary rows to the lowest invoice_id) before creating the index.
+SELECT card_id, start_date, end_date, COUNT(*) AS invoices, MIN(invoice_id) AS keep_invoice_id
+FROM tb_invoice
+GROUP BY card_id, start_date, end_date
+HAVING COUNT(*) > 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_invoice_card_cycle
+    ON tb_invoice (card_id, start_date, end_date);
@@ -0,0 +1,10 @@
+-- =====================================================================================
+-- Invoice lifecycle job : statuses move in bulk instead of on the purchase write path
+-- ddl-auto=update creates tb_job_lease, tb_invoice_lifecycle_run and
+-- seq_invoice_lifecycle_run ; the first run on start up catches up every stale status.
+-- Run this once AFTER deploying (PostgreSQL) should Hibernate skip the index.
+-- =====================================================================================
+
+-- Drives the close / open updates, keyed by status then date
+CREATE INDEX IF NOT EXISTS idx_invoice_status_end_date
+    ON tb_invoice (status, end_date);
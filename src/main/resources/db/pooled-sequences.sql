@@ -0,0 +1,22 @@
+-- =====================================================================================
+-- Pooled-lo ID blocks : every sequence hands out blocks of 50 ids per nextval
+-- except invoice_seq, read by nextval('invoice_seq') once per inserted invoice : increment 1
+-- Entities declare the same allocationSize ; ddl-auto=update does not alter existing sequences,
+-- so run this once against an existing database BEFORE deploying (PostgreSQL).
+-- Hibernate refuses to start while a sequence increment differs from its allocationSize.
+-- =====================================================================================
+
+-- Restart each sequence above the ids already used, then widen the increment
+SELECT setval('tb_users_id_seq',       (SELECT COALESCE(MAX(id), 0) + 1 FROM tb_users), false);
+SELECT setval('seq_credit_card',       (SELECT COALESCE(MAX(card_id), 0) + 1 FROM tb_credit_card), false);
+SELECT setval('seq_purchase',          (SELECT COALESCE(MAX(purchase_id), 0) + 1 FROM tb_credit_purchase), false);
+SELECT setval('seq_purchase_category', (SELECT COALESCE(MAX(purchase_category_id), 0) + 1 FROM tb_purchase_category), false);
+SELECT setval('seq_installment',       (SELECT COALESCE(MAX(installment_id), 0) + 1 FROM tb_installment), false);
+SELECT setval('invoice_seq',           (SELECT COALESCE(MAX(invoice_id), 0) + 1 FROM tb_invoice), false);
+
+ALTER SEQUENCE tb_users_id_seq       INCREMENT BY 50;
+ALTER SEQUENCE seq_credit_card       INCREMENT BY 50;
+ALTER SEQUENCE seq_purchase          INCREMENT BY 50;
+ALTER SEQUENCE seq_purchase_category INCREMENT BY 50;
+ALTER SEQUENCE seq_installment       INCREMENT BY 50;
+ALTER SEQUENCE invoice_seq           INCREMENT BY 1;
@@ -0,0 +1,28 @@
+-- =====================================================================================
+-- Recurring charges : replaces the "repeat category on the last invoice" lookup
+-- ddl-auto=update creates tb_recurring_charge, seq_recurring_charge and the new
+-- tb_credit_purchase columns ; run this once AFTER deploying (PostgreSQL) to turn the
+-- repeat purchases of each card's last invoice into recurring charges.
+-- =====================================================================================
+
+-- Hibernate may skip the unique constraint on an existing table
+CREATE UNIQUE INDEX IF NOT EXISTS uk_purchase_recurring_cycle
+    ON tb_credit_purchase (recurring_charge_id, recurring_cycle_start);
+
+-- One charge per repeat purchase of the last invoice, starting on the cycle after it
+INSERT INTO tb_recurring_charge (recurring_charge_id, card_id, category_id, descricao, value, charge_day, start_date, end_date)
+SELECT nextval('seq_recurring_charge'), cp.card_id, cp.tb_purchase_category, cp.descricao, cp.value,
+       EXTRACT(DAY FROM cp.purchase_date_time), i.end_date + 1, NULL
+FROM tb_credit_purchase cp
+JOIN tb_purchase_category pc
+    ON cp.tb_purchase_category = pc.purchase_category_id
+JOIN tb_invoice_purchase ip
+    ON cp.purchase_id = ip.purchase_id
+JOIN tb_invoice i
+    ON ip.invoice_id = i.invoice_id
+WHERE pc.repeat = true
+  AND i.invoice_id = (
+        SELECT MAX(i2.invoice_id)
+        FROM tb_invoice i2
+        WHERE i2.card_id = cp.card_id
+  );
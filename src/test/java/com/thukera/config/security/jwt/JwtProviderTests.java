@@ -0,0 +1,74 @@
+package com.thukera.config.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.thukera.user.security.service.UserPrinciple;
+
+import io.jsonwebtoken.Claims;
+
+class JwtProviderTests {
+
+	private JwtProvider jwtProvider;
+
+	@BeforeEach
+	void setUp() {
+		jwtProvider = new JwtProvider();
+		ReflectionTestUtils.setField(jwtProvider, "jwtSecret",
+				"8lra3Zua7xGNcXGNPx6HBmKPnxfoZXc+KgMD+by8vylgeAGBXznI/DrBi0047Qa35hKKmM97kpSCBqsFeQccig==");
+		ReflectionTestUtils.setField(jwtProvider, "jwtExpiration", 3600);
+		ReflectionTestUtils.setField(jwtProvider, "refreshExpiration", 7200);
+		ReflectionTestUtils.setField(jwtProvider, "verifiedCacheSize", 100L);
+		jwtProvider.init();
+	}
+
+	@Test
+	void verifiedTokenIsServedFromCache() {
+		String token = jwtProvider.generateTokenFromPrincipal(lucy(), false);
+
+		Claims first = jwtProvider.verifyJwtToken(token).orElseThrow();
+		Claims second = jwtProvider.verifyJwtToken(token).orElseThrow();
+
+		assertEquals("lucy", first.getSubject());
+		assertSame(first, second);
+		assertEquals("lucy", jwtProvider.getUserNameFromJwtToken(token));
+	}
+
+	@Test
+	void principalIsRebuiltFromClaims() {
+		String token = jwtProvider.generateTokenFromPrincipal(lucy(), false);
+
+		UserPrinciple principal = UserPrinciple.fromClaims(jwtProvider.verifyJwtToken(token).orElseThrow());
+
+		assertEquals(7L, principal.getId());
+		assertEquals("lucy", principal.getUsername());
+		assertEquals(3, principal.getTokenVersion());
+		assertEquals(List.of("ROLE_USER"),
+				principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+	}
+
+	@Test
+	void tamperedTokenIsRejected() {
+		String token = jwtProvider.generateTokenFromPrincipal(lucy(), false);
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+		assertTrue(jwtProvider.validateJwtToken(token));
+		assertFalse(jwtProvider.validateJwtToken(tampered));
+		assertFalse(jwtProvider.validateJwtToken(null));
+	}
+
+	private static UserPrinciple lucy() {
+		return new UserPrinciple(7L, "Lucy", "lucy", "lucy@mail.com", "secret",
+				List.of(new SimpleGrantedAuthority("ROLE_USER")), 3);
+	}
+}
@@ -0,0 +1,74 @@
+package com.thukera.creditcard.model.billing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Resolving the 11 following cycles of a 12x purchase : per call date math against the card calendar
+ * Same warm up / measure shape as a JMH average time run, without the harness dependency
+ * Timing only, left out of the default build : mvn test -Dtest=BillingCalendarBenchmarkTests -DexcludedTestGroups=
+ */
+@Tag("benchmark")
+class BillingCalendarBenchmarkTests {
+
+	private static final Logger logger = LogManager.getLogger(BillingCalendarBenchmarkTests.class);
+
+	private static final int ITERATIONS = 200_000;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int CYCLES = 11;
+
+	private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 31);
+	private static final BillingCalendar CALENDAR = BillingCalendar.of(31, 30, 31);
+
+	@Test
+	void nextCycles() {
+		assertEquals(adHoc(BASE_DATE), CALENDAR.nextCycles(BASE_DATE, CYCLES));
+
+		long sink = 0;
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			sink += runAdHoc() + runCalendar();
+		}
+		long adHocStart = System.nanoTime();
+		sink += runAdHoc();
+		double adHocNanos = (double) (System.nanoTime() - adHocStart) / ITERATIONS;
+
+		long calendarStart = System.nanoTime();
+		sink += runCalendar();
+		double calendarNanos = (double) (System.nanoTime() - calendarStart) / ITERATIONS;
+
+		logger.info("### next {} cycles | ad hoc : {} ns/op | calendar : {} ns/op ({})", CYCLES,
+				String.format("%.1f", adHocNanos), String.format("%.1f", calendarNanos), sink);
+	}
+
+	private static long runAdHoc() {
+		long sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += adHoc(BASE_DATE.plusDays(i & 63)).get(CYCLES - 1).due().toEpochDay();
+		}
+		return sink;
+	}
+
+	private static long runCalendar() {
+		long sink = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += CALENDAR.nextCycles(BASE_DATE.plusDays(i & 63), CYCLES).get(CYCLES - 1).due().toEpochDay();
+		}
+		return sink;
+	}
+
+	private static List<BillingCalendar.Cycle> adHoc(LocalDate baseDate) {
+		List<BillingCalendar.Cycle> cycles = new ArrayList<>(CYCLES);
+		for (int i = 1; i <= CYCLES; i++) {
+			cycles.add(BillingCalendarTests.reference(baseDate.plusMonths(i), 31, 30, 31));
+		}
+		return cycles;
+	}
+}
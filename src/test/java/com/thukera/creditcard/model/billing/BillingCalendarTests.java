@@ -0,0 +1,108 @@
+package com.thukera.creditcard.model.billing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.service.BillingCalendarService;
+
+class BillingCalendarTests {
+
+	// months around leap and non leap Februaries, 30/31 day months and year ends
+	private static final List<YearMonth> MONTHS = List.of(
+			YearMonth.of(2023, 1), YearMonth.of(2023, 2), YearMonth.of(2023, 4), YearMonth.of(2023, 11), YearMonth.of(2023, 12),
+			YearMonth.of(2024, 1), YearMonth.of(2024, 2), YearMonth.of(2024, 3), YearMonth.of(2024, 6), YearMonth.of(2024, 12),
+			YearMonth.of(2100, 2), YearMonth.of(2000, 2));
+
+	@Test
+	void everyBillingDayMatchesClampedMonthDays() {
+		for (int start = 1; start <= 31; start++) {
+			for (int end = 1; end <= 31; end++) {
+				for (int due = 1; due <= 31; due++) {
+					BillingCalendar calendar = BillingCalendar.of(start, end, due);
+					for (YearMonth month : MONTHS) {
+						LocalDate first = month.atDay(1);
+						LocalDate last = month.atEndOfMonth();
+						BillingCalendar.Cycle cycle = calendar.cycleOf(first);
+
+						assertEquals(reference(first, start, end, due), cycle);
+						assertEquals(cycle, calendar.cycleOf(last));
+						assertEquals(cycle, calendar.cycleOf(month));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void nextCyclesCrossYearAndLeapBoundaries() {
+		BillingCalendar calendar = BillingCalendar.of(31, 30, 31);
+		for (YearMonth month : MONTHS) {
+			LocalDate baseDate = month.atDay(15);
+			List<BillingCalendar.Cycle> cycles = calendar.nextCycles(baseDate, 25);
+
+			assertEquals(25, cycles.size());
+			for (int i = 0; i < cycles.size(); i++) {
+				assertEquals(reference(baseDate.plusMonths(i + 1), 31, 30, 31), cycles.get(i));
+			}
+		}
+		assertTrue(calendar.nextCycles(LocalDate.of(2024, 1, 31), 0).isEmpty());
+		assertEquals(LocalDate.of(2024, 2, 29), calendar.nextCycles(LocalDate.of(2024, 1, 31), 1).get(0).end());
+		assertEquals(LocalDate.of(2025, 2, 28), calendar.nextCycles(LocalDate.of(2024, 12, 31), 1).get(0).due());
+	}
+
+	@Test
+	void retroactiveIsBeforeCurrentMonthClosingDay() {
+		BillingCalendar calendar = BillingCalendar.of(1, 31, 10);
+		LocalDate today = LocalDate.of(2024, 2, 10);
+
+		assertTrue(calendar.isRetroactive(LocalDate.of(2024, 2, 28), today));
+		assertFalse(calendar.isRetroactive(LocalDate.of(2024, 2, 29), today));
+		assertTrue(calendar.isRetroactive(LocalDate.of(2023, 12, 31), today));
+	}
+
+	@Test
+	void cachedCalendarFollowsCardChanges() {
+		BillingCalendarService service = new BillingCalendarService();
+		CreditCard card = new CreditCard();
+		card.setCardId(1L);
+		card.setBillingPeriodStart(1);
+		card.setBillingPeriodEnd(28);
+		card.setDueDate(5);
+
+		BillingCalendar calendar = service.forCard(card);
+		assertSame(calendar, service.forCard(card));
+
+		card.setBillingPeriodEnd(20);
+		BillingCalendar changed = service.forCard(card);
+		assertEquals(LocalDate.of(2024, 3, 20), changed.cycleOf(LocalDate.of(2024, 3, 1)).end());
+
+		service.invalidate(1L);
+		assertTrue(service.forCard(card).matches(card));
+
+		card.setDueDate(null);
+		assertThrows(IllegalArgumentException.class, () -> BillingCalendar.of(card));
+		assertThrows(IllegalArgumentException.class, () -> BillingCalendar.of(0, 28, 5));
+	}
+
+	// date math the invoice code used before the calendar
+	static BillingCalendar.Cycle reference(LocalDate date, int start, int end, int due) {
+		return new BillingCalendar.Cycle(
+				validDayOfMonth(date, start),
+				validDayOfMonth(date, end),
+				validDayOfMonth(date, due).plusMonths(1));
+	}
+
+	private static LocalDate validDayOfMonth(LocalDate date, int dayOfMonth) {
+		return date.withDayOfMonth(Math.min(dayOfMonth, date.lengthOfMonth()));
+	}
+}
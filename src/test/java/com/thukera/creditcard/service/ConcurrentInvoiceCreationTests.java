@@ -0,0 +1,170 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.thukera.creditcard.model.billing.BillingCalendar;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.repository.InvoiceRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ InvoiceProvisioningService.class, CardLocks.class, BillingCalendarService.class, RecurringChargeService.class,
+		InvoiceSummaryService.class, InvoiceTotalsService.class, SimpleMeterRegistry.class })
+// every writer commits on its own thread, as concurrent requests would
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConcurrentInvoiceCreationTests {
+
+	private static final int THREADS = 8;
+	private static final int CYCLES = 6;
+
+	@Autowired
+	private InvoiceProvisioningService invoiceProvisioningService;
+
+	@Autowired
+	private BillingCalendarService billingCalendarService;
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private List<CreditCard> cards;
+
+	@BeforeEach
+	void setUp() {
+		cards = new TransactionTemplate(transactionManager).execute(status -> List.of(persistCard("1111"), persistCard("2222")));
+	}
+
+	@AfterEach
+	void tearDown() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			for (String table : new String[] { "tb_invoice", "tb_credit_card", "tb_users" }) {
+				entityManager.getEntityManager().createNativeQuery("DELETE FROM " + table).executeUpdate();
+			}
+		});
+	}
+
+	@Test
+	void parallelWritersShareOneInvoicePerCycle() throws Exception {
+		double countedBefore = onDemandCycles();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<List<Long>>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				CreditCard card = cards.get(t % cards.size());
+				futures.add(executor.submit(() -> {
+					start.await();
+					return new TransactionTemplate(transactionManager).execute(status -> invoiceIds(card));
+				}));
+			}
+			start.countDown();
+
+			// writers of a card all got the same invoices
+			List<Set<Long>> idsByCard = List.of(new HashSet<>(), new HashSet<>());
+			for (int t = 0; t < THREADS; t++) {
+				idsByCard.get(t % cards.size()).addAll(futures.get(t).get());
+			}
+			for (int c = 0; c < cards.size(); c++) {
+				assertEquals(CYCLES, idsByCard.get(c).size());
+				assertEquals(CYCLES, countInvoices(cards.get(c)));
+			}
+			// each invoice counted once, by the writer that inserted it
+			assertEquals(CYCLES * cards.size(), onDemandCycles() - countedBefore);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void cycleKeyIsUniqueWithoutTheLock() {
+		CreditCard card = cards.get(0);
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> invoiceIds(card));
+
+		// a second insert of the same cycles is skipped, a plain one is refused by the database
+		int inserted = new TransactionTemplate(transactionManager).execute(status -> invoiceRepository.insertCyclesIfAbsent(List.of(
+				invoice(card, cycles(card).get(0)), invoice(card, cycles(card).get(1)))));
+		assertEquals(0, inserted);
+		assertEquals(CYCLES, countInvoices(card));
+		assertThrows(DataIntegrityViolationException.class, () -> new TransactionTemplate(transactionManager)
+				.executeWithoutResult(status -> invoiceRepository.saveAndFlush(invoice(card, cycles(card).get(0)))));
+	}
+
+	private List<Long> invoiceIds(CreditCard card) {
+		List<BillingCalendar.Cycle> cycles = cycles(card);
+		var invoicesByCycle = invoiceProvisioningService.findOrCreate(card, cycles, Set.of());
+		return cycles.stream().map(cycle -> invoicesByCycle.get(InvoiceProvisioningService.cycleKey(cycle)).getInvoiceId()).toList();
+	}
+
+	private double onDemandCycles() {
+		return meterRegistry.get("invoice.provisioning.cycles").tag("source", "on_demand").counter().count();
+	}
+
+	private List<BillingCalendar.Cycle> cycles(CreditCard card) {
+		return billingCalendarService.forCard(card).nextCycles(LocalDate.now(), CYCLES);
+	}
+
+	private long countInvoices(CreditCard card) {
+		return new TransactionTemplate(transactionManager).execute(status -> entityManager.getEntityManager()
+				.createQuery("SELECT COUNT(i) FROM Invoice i WHERE i.creditCard.cardId = :cardId", Long.class)
+				.setParameter("cardId", card.getCardId())
+				.getSingleResult());
+	}
+
+	private static Invoice invoice(CreditCard card, BillingCalendar.Cycle cycle) {
+		Invoice invoice = new Invoice();
+		invoice.setCreditCard(card);
+		invoice.setStartDate(cycle.start());
+		invoice.setEndDate(cycle.end());
+		invoice.setDueDate(cycle.due());
+		invoice.setStatus(InvoiceStatus.PENDING);
+		invoice.setTotalAmount(BigDecimal.ZERO);
+		return invoice;
+	}
+
+	private CreditCard persistCard(String endNumbers) {
+		CreditCard card = TestData.card(TestData.persistUser(entityManager, "1234567" + endNumbers, "lucy" + endNumbers));
+		card.setEndnumbers(endNumbers);
+		return entityManager.persist(card);
+	}
+}
@@ -0,0 +1,212 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ CreditPurchaseService.class, CreditCardService.class, CreditCardMapper.class, CreditTransactionService.class,
+		InvoiceSummaryService.class, BillingCalendarService.class, RecurringChargeService.class, InvoiceTotalsService.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+// every purchase commits on its own thread, as concurrent requests would
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConcurrentPurchaseTotalsTests {
+
+	private static final Logger logger = LogManager.getLogger(ConcurrentPurchaseTotalsTests.class);
+
+	private static final int THREADS = 8;
+	private static final int PURCHASES_PER_THREAD = 20;
+
+	@Autowired
+	private CreditPurchaseService creditPurchaseService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private CreditCard card;
+
+	@BeforeEach
+	void setUp() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> persistCard());
+		when(authHelper.isCurrentUserAdmin()).thenReturn(false);
+		when(authHelper.getCurrentUserId()).thenReturn(card.getUser().getId());
+	}
+
+	@AfterEach
+	void tearDown() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			for (String table : new String[] { "tb_installment", "tb_invoice_purchase", "tb_invoice_category_summary",
+					"tb_credit_purchase", "tb_invoice", "tb_purchase_category", "tb_credit_card", "tb_users" }) {
+				entityManager.getEntityManager().createNativeQuery("DELETE FROM " + table).executeUpdate();
+			}
+		});
+	}
+
+	@Test
+	void parallelPurchasesKeepInvoiceAndCardTotals() throws Exception {
+		// current and next invoices, category and summary rows exist before the threads race on them
+		creditPurchaseService.createPurchase(form(3));
+		BigDecimal expected = new BigDecimal("30.00");
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			long start = System.nanoTime();
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < PURCHASES_PER_THREAD; i++) {
+						creditPurchaseService.createPurchase(form(1 + (thread + i) % 3));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			logger.info("### {} parallel purchases in {} ms", THREADS * PURCHASES_PER_THREAD,
+					(System.nanoTime() - start) / 1_000_000);
+		} finally {
+			executor.shutdownNow();
+		}
+		expected = expected.add(new BigDecimal("30.00").multiply(BigDecimal.valueOf(THREADS * PURCHASES_PER_THREAD)));
+
+		BigDecimal usedLimit = new TransactionTemplate(transactionManager)
+				.execute(status -> entityManager.find(CreditCard.class, card.getCardId()).getUsedLimit());
+		assertEquals(0, expected.compareTo(usedLimit), "used limit " + usedLimit + ", expected " + expected);
+
+		// each stored total matches the lines billed on it, and together they add up to every purchase
+		List<Object[]> invoices = new TransactionTemplate(transactionManager).execute(status -> invoiceTotals());
+		assertEquals(3, invoices.size());
+		BigDecimal invoiced = BigDecimal.ZERO;
+		for (Object[] invoice : invoices) {
+			BigDecimal stored = (BigDecimal) invoice[1];
+			BigDecimal billed = (BigDecimal) invoice[2];
+			assertEquals(0, billed.compareTo(stored), "invoice " + invoice[0] + " total " + stored + ", billed " + billed);
+			invoiced = invoiced.add(stored);
+		}
+		assertTrue(expected.compareTo(invoiced) == 0, "invoiced " + invoiced + ", expected " + expected);
+	}
+
+	@Test
+	void parallelDeletesKeepLinksInsertedMeanwhile() throws Exception {
+		// half the threads delete purchases already billed while the other half bill new ones on the same invoices
+		List<Long> billed = new ArrayList<>();
+		for (int i = 0; i < THREADS / 2 * PURCHASES_PER_THREAD; i++) {
+			billed.add(creditPurchaseService.createPurchase(form(1 + i % 3)).getPurchaseId());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < PURCHASES_PER_THREAD; i++) {
+						if (thread % 2 == 0) {
+							creditPurchaseService.deletePurchase(billed.get(thread / 2 * PURCHASES_PER_THREAD + i));
+						} else {
+							creditPurchaseService.createPurchase(form(1 + (thread + i) % 3));
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		BigDecimal expected = new BigDecimal("30.00").multiply(BigDecimal.valueOf(THREADS / 2 * PURCHASES_PER_THREAD));
+
+		// every surviving purchase keeps one link per installment, none of the deleted ones left a link behind
+		Object[] links = new TransactionTemplate(transactionManager).execute(status -> (Object[]) entityManager.getEntityManager()
+				.createNativeQuery("""
+						SELECT (SELECT COUNT(*) FROM tb_invoice_purchase),
+						       (SELECT COALESCE(SUM(CASE WHEN p.has_installments THEN
+						                 (SELECT COUNT(*) FROM tb_installment inst WHERE inst.credit_purchase_id = p.purchase_id)
+						               ELSE 1 END), 0) FROM tb_credit_purchase p)
+						""").getSingleResult());
+		assertEquals(((Number) links[1]).longValue(), ((Number) links[0]).longValue(), "links for surviving purchases");
+
+		BigDecimal usedLimit = new TransactionTemplate(transactionManager)
+				.execute(status -> entityManager.find(CreditCard.class, card.getCardId()).getUsedLimit());
+		assertEquals(0, expected.compareTo(usedLimit), "used limit " + usedLimit + ", expected " + expected);
+		for (Object[] invoice : new TransactionTemplate(transactionManager).execute(status -> invoiceTotals())) {
+			BigDecimal stored = (BigDecimal) invoice[1];
+			BigDecimal billedLines = (BigDecimal) invoice[2];
+			assertEquals(0, billedLines.compareTo(stored), "invoice " + invoice[0] + " total " + stored + ", billed " + billedLines);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> invoiceTotals() {
+		return entityManager.getEntityManager().createNativeQuery("""
+				SELECT i.invoice_id, i.total_amount,
+				       (SELECT COALESCE(SUM(COALESCE(inst.amount, p.value)), 0)
+				        FROM tb_invoice_purchase ip
+				        JOIN tb_credit_purchase p ON p.purchase_id = ip.purchase_id
+				        LEFT JOIN tb_installment inst ON inst.credit_purchase_id = p.purchase_id AND inst.invoice_id = ip.invoice_id
+				        WHERE ip.invoice_id = i.invoice_id)
+				FROM tb_invoice i
+				WHERE i.card_id = :cardId
+				ORDER BY i.invoice_id
+				""").setParameter("cardId", card.getCardId()).getResultList();
+	}
+
+	private void persistCard() {
+		card = TestData.card(TestData.persistUser(entityManager, TestData.LUCY_DOC, "lucy"));
+		// the current invoice stays open whatever day the test runs
+		card.setBillingPeriodEnd(31);
+		card.setTotalLimit(new BigDecimal("1000000.00"));
+		entityManager.persist(card);
+	}
+
+	private CreditPurchaseForm form(int installments) {
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setCreditCardId(card.getCardId());
+		form.setDescricao("Mercado " + installments + "x");
+		form.setValue(new BigDecimal("30.00"));
+		form.setCategory("Mercado");
+		form.setTotalInstallments(installments);
+		return form;
+	}
+}
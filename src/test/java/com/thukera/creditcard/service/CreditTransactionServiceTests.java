@@ -0,0 +1,304 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Installment;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.PurchaseCategory;
+import com.thukera.creditcard.model.entities.RecurringCharge;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.creditcard.repository.InvoiceCategorySummaryRepository;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ CreditTransactionService.class, InvoiceSummaryService.class, BillingCalendarService.class,
+		RecurringChargeService.class, InvoiceTotalsService.class, CreditCardService.class, CreditCardMapper.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+class CreditTransactionServiceTests {
+
+	@Autowired
+	private CreditTransactionService creditTransactionService;
+
+	@Autowired
+	private RecurringChargeService recurringChargeService;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
+	@Autowired
+	private InvoiceCategorySummaryRepository summaryRepository;
+
+	@Autowired
+	private InvoiceProvisioningService invoiceProvisioningService;
+
+	@Autowired
+	private CreditCardService creditCardService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private CreditCard card;
+
+	@BeforeEach
+	void setUp() {
+		card = TestData.persistCardWithOwner(entityManager);
+		entityManager.flush();
+	}
+
+	@Test
+	void installmentPlanIsResolvedWithOneRangeQuery() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		CreditPurchase purchase = creditTransactionService.createPurchase(form(12), card);
+		entityManager.flush();
+
+		List<Invoice> invoices = purchase.getInvoices();
+		assertEquals(12, invoices.size());
+		assertEquals(12, invoices.stream().map(Invoice::getStartDate).distinct().count());
+		assertEquals(12, purchase.getInstallments().size());
+		assertEquals(12, purchase.getInstallments().get(11).getCurrentInstallment());
+		invoices.forEach(invoice -> assertEquals(new BigDecimal("100.00"), invoice.getTotalAmount()));
+
+		// covering invoice lookup of the first cycle, current or retroative + one range query, each read back after its insert
+		// + recurring charge checks + totals read back, independent of the installment count
+		long invoiceLookups = statistics.getQueryExecutionCount();
+		assertTrue(invoiceLookups <= 9, "installment plan ran " + invoiceLookups + " queries");
+	}
+
+	@Test
+	void purchasesInsideTheHorizonFindProvisionedInvoices() {
+		LocalDate today = LocalDate.now();
+		assertEquals(List.of(card.getCardId()), invoiceProvisioningService.findCardsToProvision(today, 0L, 10));
+		assertEquals(3, invoiceProvisioningService.provisionCard(card.getCardId(), today));
+		assertTrue(invoiceProvisioningService.findCardsToProvision(today, 0L, 10).isEmpty());
+
+		double onDemand = cyclesCreated("on_demand");
+		CreditPurchase purchase = creditTransactionService.createPurchase(form(3), card);
+		entityManager.flush();
+
+		assertEquals(3, purchase.getInvoices().size());
+		assertEquals(onDemand, cyclesCreated("on_demand"));
+		assertEquals(0, invoiceProvisioningService.provisionCard(card.getCardId(), today));
+	}
+
+	@Test
+	void billingDayChangeReplacesEmptyPendingInvoices() {
+		LocalDate today = LocalDate.now();
+		// the current cycle covers today whatever day the test runs
+		card.setBillingPeriodEnd(31);
+		assertEquals(3, invoiceProvisioningService.provisionCard(card.getCardId(), today));
+		List<Invoice> provisioned = cardInvoices();
+
+		card.setBillingPeriodEnd(20);
+		card.setDueDate(25);
+		creditCardService.updateCreditCard(card);
+
+		// the OPEN current invoice keeps its days, the PENDING ones are replaced by invoices of the new days
+		List<Invoice> invoices = cardInvoices();
+		assertEquals(3, invoices.size());
+		assertEquals(provisioned.get(0).getInvoiceId(), invoices.get(0).getInvoiceId());
+		for (Invoice invoice : invoices.subList(1, 3)) {
+			assertTrue(provisioned.stream().noneMatch(old -> old.getInvoiceId().equals(invoice.getInvoiceId())));
+			assertEquals(20, invoice.getEndDate().getDayOfMonth());
+			assertEquals(25, invoice.getDueDate().getDayOfMonth());
+			assertEquals(InvoiceStatus.PENDING, invoice.getStatus());
+		}
+		assertTrue(invoiceProvisioningService.findCardsToProvision(today, 0L, 10).isEmpty());
+
+		// a plan finds the replaced invoices, none is created on demand beside them
+		double onDemand = cyclesCreated("on_demand");
+		CreditPurchase purchase = creditTransactionService.createPurchase(form(3), card);
+		entityManager.flush();
+		assertEquals(invoices.stream().map(Invoice::getInvoiceId).toList(),
+				purchase.getInvoices().stream().map(Invoice::getInvoiceId).toList());
+		assertEquals(onDemand, cyclesCreated("on_demand"));
+		assertEquals(3, cardInvoices().size());
+	}
+
+	@Test
+	void existingInvoicesAreReusedForTheNextPlan() {
+		CreditPurchase first = creditTransactionService.createPurchase(form(6), card);
+		CreditPurchase second = creditTransactionService.createPurchase(form(12), card);
+		entityManager.flush();
+
+		for (int i = 0; i < 6; i++) {
+			assertEquals(first.getInvoices().get(i).getInvoiceId(), second.getInvoices().get(i).getInvoiceId());
+			assertEquals(new BigDecimal("200.00"), second.getInvoices().get(i).getTotalAmount());
+		}
+		Long invoiceCount = entityManager.getEntityManager()
+				.createQuery("SELECT COUNT(i) FROM Invoice i WHERE i.creditCard = :card", Long.class)
+				.setParameter("card", card)
+				.getSingleResult();
+		assertEquals(12L, invoiceCount);
+	}
+
+	@Test
+	void recurringChargesAreBilledOncePerCycle() {
+		PurchaseCategory streaming = entityManager.persist(new PurchaseCategory("Streaming", false, false));
+		RecurringCharge active = charge(streaming, "39.90", LocalDate.now().minusYears(1), null);
+		charge(streaming, "10.00", LocalDate.now().minusYears(1), LocalDate.now().withDayOfMonth(1).minusDays(1));
+		entityManager.flush();
+
+		// undated, billed on the current invoice instead of a retroactive one
+		CreditPurchaseForm undated = form(3);
+		undated.setPurchaseDateTime(null);
+		CreditPurchase purchase = creditTransactionService.createPurchase(undated, card);
+		entityManager.flush();
+
+		List<Invoice> invoices = purchase.getInvoices();
+		invoices.forEach(invoice -> assertEquals(new BigDecimal("139.90"), invoice.getTotalAmount()));
+		List<String> summaries = categoryTotals(invoices);
+		assertEquals(0, recurringChargeService.billCycles(card, invoices));
+		entityManager.flush();
+		entityManager.clear();
+
+		List<CreditPurchase> charged = entityManager.getEntityManager()
+				.createQuery("SELECT p FROM CreditPurchase p JOIN FETCH p.invoices WHERE p.recurringCharge IS NOT NULL", CreditPurchase.class)
+				.getResultList();
+		assertEquals(3, charged.size());
+		for (CreditPurchase recurring : charged) {
+			assertEquals(active.getRecurringChargeId(), recurring.getRecurringCharge().getRecurringChargeId());
+			assertEquals(1, recurring.getInvoices().size());
+			Invoice invoice = recurring.getInvoices().get(0);
+			assertEquals(invoice.getStartDate(), recurring.getRecurringCycleStart());
+			assertEquals(invoice.getStartDate().lengthOfMonth(), recurring.getPurchaseDateTime().getDayOfMonth());
+			assertEquals(new BigDecimal("139.90"), invoice.getTotalAmount());
+		}
+
+		invoiceSummaryService.rebuild(null);
+		assertEquals(summaries, categoryTotals(invoices));
+	}
+
+	@Test
+	void replanKeepsInstallmentRowsAndTouchesOnlyChangedInvoices() {
+		CreditPurchase purchase = creditTransactionService.createPurchase(form(12), card);
+		entityManager.flush();
+		List<Long> installmentIds = installments(purchase).stream().map(Installment::getInstallmentId).toList();
+		List<Long> invoiceIds = installments(purchase).stream().map(installment -> installment.getInvoice().getInvoiceId()).toList();
+
+		// typo'd amount, then a shorter plan : same rows with new amounts, the tail trimmed
+		creditTransactionService.replanPurchase(purchase, new BigDecimal("1320.00"), null, 12, card);
+		creditTransactionService.replanPurchase(purchase, new BigDecimal("660.00"), null, 6, card);
+		entityManager.flush();
+		entityManager.clear();
+
+		CreditPurchase trimmed = entityManager.find(CreditPurchase.class, purchase.getPurchaseId());
+		assertEquals(installmentIds.subList(0, 6), installments(trimmed).stream().map(Installment::getInstallmentId).toList());
+		installments(trimmed).forEach(installment -> {
+			assertEquals(new BigDecimal("110.00"), installment.getValue());
+			assertEquals(6, installment.getTotalInstallment());
+		});
+		assertEquals(6, trimmed.getInvoices().size());
+
+		// longer plan : the kept invoices already hold 110.00, only the appended ones change
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		creditTransactionService.replanPurchase(trimmed, new BigDecimal("880.00"), null, 8, card);
+		entityManager.flush();
+		assertEquals(2, statistics.getEntityInsertCount());
+		assertEquals(0, statistics.getEntityDeleteCount());
+		entityManager.clear();
+
+		List<Invoice> invoices = new ArrayList<>();
+		for (int i = 0; i < invoiceIds.size(); i++) {
+			Invoice invoice = entityManager.find(Invoice.class, invoiceIds.get(i));
+			assertEquals(0, new BigDecimal(i < 8 ? "110.00" : "0.00").compareTo(invoice.getTotalAmount()), "invoice " + i);
+			invoices.add(invoice);
+		}
+		CreditPurchase extended = entityManager.find(CreditPurchase.class, purchase.getPurchaseId());
+		assertEquals(invoiceIds.subList(0, 8), installments(extended).stream().map(installment -> installment.getInvoice().getInvoiceId()).toList());
+		assertEquals(8, extended.getInvoices().size());
+
+		List<String> summaries = categoryTotals(invoices);
+		invoiceSummaryService.rebuild(null);
+		assertEquals(categoryTotals(invoices), summaries);
+	}
+
+	private static List<Installment> installments(CreditPurchase purchase) {
+		List<Installment> installments = new ArrayList<>(purchase.getInstallments());
+		installments.sort(Comparator.comparingInt(Installment::getCurrentInstallment));
+		return installments;
+	}
+
+	private RecurringCharge charge(PurchaseCategory category, String value, LocalDate startDate, LocalDate endDate) {
+		RecurringCharge charge = new RecurringCharge();
+		charge.setCreditCard(card);
+		charge.setCategory(category);
+		charge.setDescricao("Subscription " + value);
+		charge.setValue(new BigDecimal(value));
+		charge.setChargeDay(31);
+		charge.setStartDate(startDate);
+		charge.setEndDate(endDate);
+		return entityManager.persist(charge);
+	}
+
+	private List<String> categoryTotals(List<Invoice> invoices) {
+		List<String> totals = new ArrayList<>();
+		for (Invoice invoice : invoices) {
+			summaryRepository.findCategoryTotals(invoice.getInvoiceId()).forEach(row -> totals.add(invoice.getInvoiceId()
+					+ ":" + row.getCategory() + ":" + row.getTotalValue().stripTrailingZeros().toPlainString()));
+		}
+		return totals;
+	}
+
+	private List<Invoice> cardInvoices() {
+		return entityManager.getEntityManager()
+				.createQuery("SELECT i FROM Invoice i WHERE i.creditCard = :card ORDER BY i.startDate", Invoice.class)
+				.setParameter("card", card)
+				.getResultList();
+	}
+
+	private double cyclesCreated(String source) {
+		return meterRegistry.get("invoice.provisioning.cycles").tag("source", source).counter().count();
+	}
+
+	private static CreditPurchaseForm form(int installments) {
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setDescricao("Notebook");
+		form.setValue(new BigDecimal("1200.00").multiply(BigDecimal.valueOf(installments)).divide(BigDecimal.valueOf(12)));
+		form.setCategory("Eletronicos");
+		form.setTotalInstallments(installments);
+		form.setPurchaseDateTime(LocalDateTime.now());
+		return form;
+	}
+}
@@ -0,0 +1,109 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.InvoiceLifecycleRun;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ InvoiceLifecycleJob.class, InvoiceLifecycleService.class, JobLeaseService.class, SimpleMeterRegistry.class })
+class InvoiceLifecycleTests {
+
+	private static final LocalDate TODAY = LocalDate.of(2025, 3, 15);
+
+	@Autowired
+	private InvoiceLifecycleJob invoiceLifecycleJob;
+
+	@Autowired
+	private JobLeaseService jobLeaseService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	private CreditCard card;
+
+	@BeforeEach
+	void setUp() {
+		card = TestData.persistCardWithOwner(entityManager);
+	}
+
+	@Test
+	void endedCyclesCloseAndStartedCyclesOpenInOneRun() {
+		Invoice endedOpen = invoice(LocalDate.of(2025, 2, 1), InvoiceStatus.OPEN);
+		Invoice endedPending = invoice(LocalDate.of(2025, 1, 1), InvoiceStatus.PENDING);
+		Invoice started = invoice(LocalDate.of(2025, 3, 1), InvoiceStatus.PENDING);
+		Invoice future = invoice(LocalDate.of(2025, 4, 1), InvoiceStatus.PENDING);
+		Invoice paid = invoice(LocalDate.of(2024, 12, 1), InvoiceStatus.PAID);
+
+		InvoiceLifecycleRun run = invoiceLifecycleJob.runOnce(TODAY).orElseThrow();
+		assertEquals(2, run.getClosedCount());
+		assertEquals(1, run.getOpenedCount());
+
+		entityManager.flush();
+		entityManager.clear();
+		assertStatus(endedOpen, InvoiceStatus.CLOSED);
+		assertStatus(endedPending, InvoiceStatus.CLOSED);
+		assertStatus(started, InvoiceStatus.OPEN);
+		assertStatus(future, InvoiceStatus.PENDING);
+		assertStatus(paid, InvoiceStatus.PAID);
+		assertEquals(run.getOwner(), entityManager.find(InvoiceLifecycleRun.class, run.getRunId()).getOwner());
+		assertEquals(2.0, meterRegistry.get("invoice.lifecycle.transitions").tag("transition", "closed").counter().count());
+
+		// nothing left to move, the lease holder may run again
+		InvoiceLifecycleRun rerun = invoiceLifecycleJob.runOnce(TODAY).orElseThrow();
+		assertEquals(0, rerun.getClosedCount() + rerun.getOpenedCount());
+	}
+
+	@Test
+	void leaseHeldByOneInstanceUntilItExpires() {
+		LocalDateTime now = LocalDateTime.of(2025, 3, 15, 10, 0);
+		Duration lease = Duration.ofMinutes(10);
+
+		assertTrue(jobLeaseService.tryAcquire("test-job", "instance-a", now, lease));
+		assertFalse(jobLeaseService.tryAcquire("test-job", "instance-b", now.plusMinutes(5), lease));
+		assertTrue(jobLeaseService.tryAcquire("test-job", "instance-a", now.plusMinutes(5), lease));
+		assertFalse(jobLeaseService.tryAcquire("test-job", "instance-b", now.plusMinutes(14), lease));
+		assertTrue(jobLeaseService.tryAcquire("test-job", "instance-b", now.plusMinutes(16), lease));
+	}
+
+	private void assertStatus(Invoice invoice, InvoiceStatus expected) {
+		assertEquals(expected, entityManager.find(Invoice.class, invoice.getInvoiceId()).getStatus());
+	}
+
+	private Invoice invoice(LocalDate start, InvoiceStatus status) {
+		Invoice invoice = new Invoice();
+		invoice.setCreditCard(card);
+		invoice.setStartDate(start);
+		invoice.setEndDate(start.withDayOfMonth(start.lengthOfMonth()));
+		invoice.setDueDate(start.plusMonths(1).withDayOfMonth(5));
+		invoice.setTotalAmount(BigDecimal.ZERO);
+		invoice.setStatus(status);
+		return entityManager.persistAndFlush(invoice);
+	}
+}
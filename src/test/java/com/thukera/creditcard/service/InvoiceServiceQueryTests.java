@@ -0,0 +1,179 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.dto.InvoiceDTO;
+import com.thukera.creditcard.model.dto.PurchaseDTOFromInvoice;
+import com.thukera.creditcard.model.dto.PurchasePageDTO;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.CreditPurchase;
+import com.thukera.creditcard.model.entities.Installment;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.entities.PurchaseCategory;
+import com.thukera.creditcard.model.enums.InvoiceStatus;
+import com.thukera.creditcard.model.form.CreditPanel;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ InvoiceService.class, CreditCardService.class, CreditCardMapper.class, StatementExportService.class,
+		InvoiceSummaryService.class, BillingCalendarService.class, InvoiceTotalsService.class, JacksonAutoConfiguration.class,
+		InvoiceProvisioningService.class, RecurringChargeService.class, CardLocks.class, SimpleMeterRegistry.class })
+class InvoiceServiceQueryTests {
+
+	private static final int PURCHASES = 40;
+
+	@Autowired
+	private InvoiceService invoiceService;
+
+	@Autowired
+	private StatementExportService statementExportService;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private Long invoiceId;
+
+	@BeforeEach
+	void setUp() {
+		CreditCard card = TestData.persistCardWithOwner(entityManager);
+
+		Invoice invoice = new Invoice();
+		invoice.setCreditCard(card);
+		invoice.setStartDate(LocalDate.of(2025, 1, 1));
+		invoice.setEndDate(LocalDate.of(2025, 1, 28));
+		invoice.setDueDate(LocalDate.of(2025, 2, 5));
+		invoice.setStatus(InvoiceStatus.OPEN);
+		invoice.setTotalAmount(BigDecimal.ZERO);
+		entityManager.persist(invoice);
+
+		PurchaseCategory market = entityManager.persist(new PurchaseCategory("Market", true, false));
+		PurchaseCategory travel = entityManager.persist(new PurchaseCategory("Travel", true, false));
+
+		for (int i = 0; i < PURCHASES; i++) {
+			CreditPurchase purchase = new CreditPurchase("Purchase " + i, new BigDecimal("30.00"),
+					LocalDateTime.of(2025, 1, 1 + i % 27, 10, 0));
+			purchase.setCreditCard(card);
+			purchase.setCategory(i % 2 == 0 ? market : travel);
+			purchase.setHasInstallments(i % 4 == 0);
+			entityManager.persist(purchase);
+			invoice.getPurchases().add(purchase);
+
+			if (purchase.isHasInstallments()) {
+				entityManager.persist(new Installment(1, 3, new BigDecimal("10.00"), purchase, invoice));
+			}
+		}
+
+		entityManager.flush();
+		entityManager.clear();
+		invoiceId = invoice.getInvoiceId();
+		invoiceSummaryService.rebuild(null);
+
+		when(authHelper.isCurrentUserAdmin()).thenReturn(false);
+		when(authHelper.getCurrentUserId()).thenReturn(card.getUser().getId());
+	}
+
+	@Test
+	void invoiceDetailIsLoadedInConstantStatements() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		InvoiceDTO invoice = invoiceService.getInvoiceById(invoiceId);
+
+		assertEquals(PURCHASES, invoice.getPurchases().size());
+		assertEquals(PURCHASES / 4, invoice.getPurchases().stream().filter(p -> p.getInstallment() != null).count());
+		assertEquals("Roxinho", invoice.getCreditcard().getNickname());
+		assertEquals(new BigDecimal("1200.00"), invoice.getCreditPanel().getTotalInstallments());
+		assertEquals(new BigDecimal("1000.00"), invoice.getCreditPanel().getPaydInstallments());
+		assertEquals(2, invoice.getCreditPanel().getCategoryPanel().size());
+		assertTrue(statistics.getPrepareStatementCount() <= 3,
+				"invoice detail ran " + statistics.getPrepareStatementCount() + " statements");
+	}
+
+	@Test
+	void purchasesArePagedByKeysetWithoutGapsOrRepeats() {
+		List<PurchaseDTOFromInvoice> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			PurchasePageDTO page = invoiceService.getInvoicePurchases(invoiceId, cursor, 7);
+			assertTrue(page.getPurchases().size() <= 7);
+			seen.addAll(page.getPurchases());
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertEquals(PURCHASES, seen.stream().map(PurchaseDTOFromInvoice::getPurchaseId).distinct().count());
+		for (int i = 1; i < seen.size(); i++) {
+			assertFalse(seen.get(i).getPurchaseDateTime().isBefore(seen.get(i - 1).getPurchaseDateTime()));
+		}
+	}
+
+	@Test
+	void invoiceExportIsStreamedAsOneJsonDocument() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		statementExportService.exportInvoice(invoiceId).writeTo(out);
+
+		JsonNode invoice = objectMapper.readTree(out.toByteArray());
+		assertEquals(invoiceId.longValue(), invoice.get("invoiceId").asLong());
+		assertEquals("01-01-2025", invoice.get("startDate").asText());
+		assertEquals(PURCHASES, invoice.get("purchases").size());
+	}
+
+	@Test
+	void categoryTotalsFollowPurchaseDeltas() {
+		CreditPurchase purchase = entityManager.getEntityManager()
+				.createQuery("SELECT p FROM CreditPurchase p WHERE p.descricao = 'Purchase 0'", CreditPurchase.class)
+				.getSingleResult();
+
+		invoiceSummaryService.removePurchase(purchase);
+		CreditPanel panel = invoiceService.getInvoiceById(invoiceId).getCreditPanel();
+		assertEquals(new BigDecimal("1170.00"), panel.getTotalInstallments());
+		assertEquals(new BigDecimal("990.00"), panel.getPaydInstallments());
+
+		invoiceSummaryService.addPurchase(purchase);
+		panel = invoiceService.getInvoiceById(invoiceId).getCreditPanel();
+		assertEquals(new BigDecimal("1200.00"), panel.getTotalInstallments());
+		assertEquals(new BigDecimal("1000.00"), panel.getPaydInstallments());
+	}
+}
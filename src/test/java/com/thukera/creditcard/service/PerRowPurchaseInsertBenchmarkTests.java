@@ -0,0 +1,22 @@
+package com.thukera.creditcard.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Baseline : one nextval round trip per row and no JDBC batching
+ */
+@Tag("benchmark")
+@TestPropertySource(properties = {
+		"spring.jpa.properties.hibernate.id.optimizer.pooled.preferred=none",
+		"spring.jpa.properties.hibernate.jdbc.batch_size=0",
+		"spring.jpa.properties.hibernate.order_inserts=false",
+		"spring.jpa.properties.hibernate.order_updates=false" })
+class PerRowPurchaseInsertBenchmarkTests extends PurchaseInsertBenchmark {
+
+	@Test
+	void twelveInstallmentPurchase() {
+		run("per-row ids, no batching");
+	}
+}
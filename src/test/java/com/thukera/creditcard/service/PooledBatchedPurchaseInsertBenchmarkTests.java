@@ -0,0 +1,16 @@
+package com.thukera.creditcard.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Application configuration : pooled-lo id blocks, ordered JDBC batches
+ */
+@Tag("benchmark")
+class PooledBatchedPurchaseInsertBenchmarkTests extends PurchaseInsertBenchmark {
+
+	@Test
+	void twelveInstallmentPurchase() {
+		run("pooled-lo ids, batched");
+	}
+}
@@ -0,0 +1,192 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.dto.PurchaseBatchItemDTO;
+import com.thukera.creditcard.model.dto.PurchaseBatchResultDTO;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.creditcard.repository.InvoiceCategorySummaryRepository;
+import com.thukera.user.model.entities.User;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ CreditPurchaseService.class, CreditCardService.class, CreditCardMapper.class, CreditTransactionService.class,
+		InvoiceSummaryService.class, BillingCalendarService.class,
+		RecurringChargeService.class, InvoiceTotalsService.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+class PurchaseBatchTests {
+
+	private static final Logger logger = LogManager.getLogger(PurchaseBatchTests.class);
+
+	@Autowired
+	private CreditPurchaseService creditPurchaseService;
+
+	@Autowired
+	private InvoiceSummaryService invoiceSummaryService;
+
+	@Autowired
+	private InvoiceCategorySummaryRepository summaryRepository;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		user = TestData.persistUser(entityManager, TestData.LUCY_DOC, "lucy");
+		when(authHelper.isCurrentUserAdmin()).thenReturn(false);
+		when(authHelper.getCurrentUserId()).thenReturn(user.getId());
+	}
+
+	@Test
+	void batchReportsEachItemAndKeepsTotalsConsistent() {
+		CreditCard card = persistCard(user, "Roxinho");
+		CreditCard foreignCard = persistCard(TestData.persistUser(entityManager, "98765432100", "mike"), "Other");
+
+		List<CreditPurchaseForm> forms = new ArrayList<>();
+		BigDecimal expectedTotal = BigDecimal.ZERO;
+		for (int i = 0; i < 60; i++) {
+			CreditPurchaseForm form = form(card, i, i % 3 == 0 ? 3 : 1);
+			if (i % 10 == 5) {
+				// billed on the cycle of its own date
+				form.setPurchaseDateTime(LocalDateTime.now().minusMonths(2));
+			}
+			forms.add(form);
+			expectedTotal = expectedTotal.add(form.getValue());
+		}
+		CreditPurchaseForm noValue = form(card, 60, 1);
+		noValue.setValue(null);
+		forms.add(noValue);
+		forms.add(form(card, 61, 0));
+		forms.add(form(foreignCard, 62, 1));
+
+		PurchaseBatchResultDTO result = creditPurchaseService.createPurchases(forms);
+		entityManager.flush();
+		entityManager.clear();
+
+		assertEquals(60, result.getCreated());
+		assertEquals(3, result.getRejected());
+		assertEquals(forms.size(), result.getItems().size());
+		for (int i = 0; i < forms.size(); i++) {
+			PurchaseBatchItemDTO item = result.getItems().get(i);
+			assertEquals(i, item.getIndex());
+			assertEquals(i < 60 ? PurchaseBatchItemDTO.CREATED : PurchaseBatchItemDTO.REJECTED, item.getStatus());
+			if (i < 60) {
+				assertNotNull(item.getPurchaseId());
+			}
+		}
+
+		CreditCard reloaded = entityManager.find(CreditCard.class, card.getCardId());
+		assertEquals(0, expectedTotal.compareTo(reloaded.getUsedLimit()));
+
+		List<Invoice> invoices = entityManager.getEntityManager()
+				.createQuery("SELECT i FROM Invoice i WHERE i.creditCard.cardId = :cardId", Invoice.class)
+				.setParameter("cardId", card.getCardId())
+				.getResultList();
+		BigDecimal invoiced = invoices.stream().map(Invoice::getTotalAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+		assertEquals(0, expectedTotal.compareTo(invoiced));
+
+		// batched category deltas match a rebuild from the purchase tables
+		List<String> summaries = categoryTotals(invoices);
+		invoiceSummaryService.rebuild(null);
+		assertEquals(categoryTotals(invoices), summaries);
+	}
+
+	@Test
+	void batchIssuesFewerStatementsThanSingleItemPath() {
+		int items = 100;
+		CreditCard singleCard = persistCard(user, "Single");
+		CreditCard batchCard = persistCard(user, "Batch");
+		entityManager.flush();
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		statistics.clear();
+		long start = System.nanoTime();
+		for (int i = 0; i < items; i++) {
+			creditPurchaseService.createPurchase(form(singleCard, i, i % 4 == 0 ? 6 : 1));
+		}
+		entityManager.flush();
+		double singleMillis = (System.nanoTime() - start) / 1_000_000.0;
+		long singleStatements = statistics.getPrepareStatementCount();
+
+		List<CreditPurchaseForm> forms = new ArrayList<>();
+		for (int i = 0; i < items; i++) {
+			forms.add(form(batchCard, i, i % 4 == 0 ? 6 : 1));
+		}
+		statistics.clear();
+		start = System.nanoTime();
+		creditPurchaseService.createPurchases(forms);
+		entityManager.flush();
+		double batchMillis = (System.nanoTime() - start) / 1_000_000.0;
+		long batchStatements = statistics.getPrepareStatementCount();
+
+		logger.info("### {} purchases | single : {} statements, {} ms | batch : {} statements, {} ms", items,
+				singleStatements, String.format("%.1f", singleMillis), batchStatements, String.format("%.1f", batchMillis));
+		assertTrue(batchStatements * 3 < singleStatements,
+				"batch statements: " + batchStatements + ", single statements: " + singleStatements);
+	}
+
+	private List<String> categoryTotals(List<Invoice> invoices) {
+		List<String> totals = new ArrayList<>();
+		for (Invoice invoice : invoices) {
+			summaryRepository.findCategoryTotals(invoice.getInvoiceId()).forEach(row -> totals.add(
+					invoice.getInvoiceId() + ":" + row.getCategory() + ":" + row.getTotalValue().stripTrailingZeros().toPlainString()
+							+ ":" + row.getPaidValue().stripTrailingZeros().toPlainString()));
+		}
+		return totals;
+	}
+
+	private CreditCard persistCard(User owner, String nickname) {
+		CreditCard card = TestData.card(owner);
+		card.setNickname(nickname);
+		card.setTotalLimit(new BigDecimal("50000.00"));
+		return entityManager.persist(card);
+	}
+
+	private static CreditPurchaseForm form(CreditCard card, int i, int installments) {
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setCreditCardId(card.getCardId());
+		form.setDescricao("Receipt " + i);
+		form.setValue(installments == 3 ? new BigDecimal("90.00") : new BigDecimal("30.00"));
+		form.setCategory(i % 2 == 0 ? "Market" : "Travel");
+		form.setTotalInstallments(installments);
+		return form;
+	}
+}
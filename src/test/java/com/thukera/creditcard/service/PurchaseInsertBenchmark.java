@@ -0,0 +1,125 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.user.model.entities.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Statement count and latency of creating a 12 installment purchase on a card without invoices
+ * Subclasses pick the id / batching configuration being measured
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ CreditTransactionService.class, InvoiceSummaryService.class, BillingCalendarService.class,
+		RecurringChargeService.class, InvoiceTotalsService.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+abstract class PurchaseInsertBenchmark {
+
+	private static final Logger logger = LogManager.getLogger(PurchaseInsertBenchmark.class);
+
+	static final int WARMUP = 5;
+	static final int RUNS = 20;
+	static final int INSTALLMENTS = 12;
+
+	@Autowired
+	private CreditTransactionService creditTransactionService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		user = TestData.persistUser(entityManager, TestData.LUCY_DOC, "lucy");
+		// category created up front, so every measured purchase does the same work
+		creditTransactionService.findOrCreateCategory("Eletronicos");
+		entityManager.flush();
+	}
+
+	/**
+	 * Create one 12x purchase per fresh card and flush it, RUNS times after WARMUP
+	 * @return prepared statements per purchase and average latency
+	 */
+	Result run(String label) {
+		return run(label, WARMUP, RUNS);
+	}
+
+	Result run(String label, int warmup, int runs) {
+		for (CreditCard card : newCards(warmup)) {
+			createAndFlush(card);
+		}
+
+		List<CreditCard> cards = newCards(runs);
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		long start = System.nanoTime();
+		for (CreditCard card : cards) {
+			createAndFlush(card);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Result result = new Result(
+				(double) statistics.getPrepareStatementCount() / runs,
+				(double) statistics.getEntityInsertCount() / runs,
+				elapsed / 1_000_000.0 / runs);
+		logger.info("### {} | 12x purchase : {} statements, {} entity inserts, {} ms avg", label,
+				result.statementsPerPurchase(), result.insertsPerPurchase(), String.format("%.2f", result.millisPerPurchase()));
+		return result;
+	}
+
+	private void createAndFlush(CreditCard card) {
+		creditTransactionService.createPurchase(form(), card);
+		entityManager.flush();
+	}
+
+	private List<CreditCard> newCards(int count) {
+		List<CreditCard> cards = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			CreditCard card = TestData.card(user);
+			card.setNickname("Card " + i);
+			entityManager.persist(card);
+			cards.add(card);
+		}
+		entityManager.flush();
+		return cards;
+	}
+
+	private static CreditPurchaseForm form() {
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setDescricao("Notebook");
+		form.setValue(new BigDecimal("1200.00"));
+		form.setCategory("Eletronicos");
+		form.setTotalInstallments(INSTALLMENTS);
+		form.setPurchaseDateTime(LocalDateTime.now());
+		return form;
+	}
+
+	record Result(double statementsPerPurchase, double insertsPerPurchase, double millisPerPurchase) {
+	}
+}
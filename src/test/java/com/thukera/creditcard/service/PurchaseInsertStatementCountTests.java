@@ -0,0 +1,39 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+/**
+ * Statement count regression check of a 12 installment purchase, run by the default build
+ * The same purchase is measured with JDBC batching switched off on the session and with the configured batches
+ */
+class PurchaseInsertStatementCountTests extends PurchaseInsertBenchmark {
+
+	private static final int WARMUP_RUNS = 2;
+	private static final int MEASURED_RUNS = 5;
+
+	// ~24 statements today, per-row ids with no batching need ~48 for the same purchase
+	private static final double MAX_STATEMENTS_PER_PURCHASE = 30;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Test
+	void batchingIssuesFewerStatementsThanPerRowInserts() {
+		Session session = entityManager.getEntityManager().unwrap(Session.class);
+
+		session.setJdbcBatchSize(1);
+		Result perRow = run("pooled-lo ids, no batching", WARMUP_RUNS, MEASURED_RUNS);
+		session.setJdbcBatchSize(null);
+		Result batched = run("pooled-lo ids, batched", WARMUP_RUNS, MEASURED_RUNS);
+
+		assertTrue(perRow.statementsPerPurchase() > batched.statementsPerPurchase(),
+				"per-row: " + perRow.statementsPerPurchase() + ", batched: " + batched.statementsPerPurchase());
+		assertTrue(batched.statementsPerPurchase() <= MAX_STATEMENTS_PER_PURCHASE,
+				"statements per purchase: " + batched.statementsPerPurchase());
+	}
+}
@@ -0,0 +1,134 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.dto.StatementImportResultDTO;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ StatementImportService.class, CreditPurchaseService.class, CreditCardService.class, CreditCardMapper.class,
+		CreditTransactionService.class, InvoiceSummaryService.class, BillingCalendarService.class,
+		RecurringChargeService.class, InvoiceTotalsService.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+// chunks commit on their own as in production, instead of piling up in one test transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StatementImportServiceTests {
+
+	private static final Logger logger = LogManager.getLogger(StatementImportServiceTests.class);
+
+	private static final int LINES = 10_000;
+
+	@Autowired
+	private StatementImportService statementImportService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private CreditCard card;
+
+	@BeforeEach
+	void setUp() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> persistCard());
+		when(authHelper.isCurrentUserAdmin()).thenReturn(false);
+		when(authHelper.getCurrentUserId()).thenReturn(card.getUser().getId());
+	}
+
+	@AfterEach
+	void tearDown() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			for (String table : new String[] { "tb_installment", "tb_invoice_purchase", "tb_invoice_category_summary",
+					"tb_credit_purchase", "tb_invoice", "tb_purchase_category", "tb_credit_card", "tb_users" }) {
+				entityManager.getEntityManager().createNativeQuery("DELETE FROM " + table).executeUpdate();
+			}
+		});
+	}
+
+	private void persistCard() {
+		card = TestData.card(TestData.persistUser(entityManager, TestData.LUCY_DOC, "lucy"));
+		card.setTotalLimit(new BigDecimal("1000000.00"));
+		entityManager.persist(card);
+	}
+
+	@Test
+	void tenThousandLineStatementImportsInChunks() {
+		// every 10th line opens a 3x plan, every 10th + 1 continues one, every 50th is a payment
+		StringBuilder csv = new StringBuilder("data;descricao;valor;categoria\n");
+		LocalDate start = LocalDate.now().withDayOfMonth(1).minusMonths(3);
+		int expectedCreated = 0;
+		int expectedSkipped = 0;
+		BigDecimal expectedTotal = BigDecimal.ZERO;
+		for (int i = 0; i < LINES; i++) {
+			String date = start.plusDays(i % 60).format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+			String category = i % 2 == 0 ? "Mercado" : "Transporte";
+			if (i % 50 == 49) {
+				csv.append(date).append(";Pagamento;-100,00;\n");
+				expectedSkipped++;
+			} else if (i % 10 == 0) {
+				csv.append(date).append(";Loja ").append(i).append(" 01/03;10,00;").append(category).append('\n');
+				expectedCreated++;
+				expectedTotal = expectedTotal.add(new BigDecimal("30.00"));
+			} else if (i % 10 == 1) {
+				csv.append(date).append(";Loja ").append(i - 1).append(" 02/03;10,00;").append(category).append('\n');
+				expectedSkipped++;
+			} else {
+				csv.append(date).append(";Compra ").append(i).append(";12,34;").append(category).append('\n');
+				expectedCreated++;
+				expectedTotal = expectedTotal.add(new BigDecimal("12.34"));
+			}
+		}
+		csv.append("31/02/2025;Data inválida;1,00;Mercado\n");
+
+		long begin = System.nanoTime();
+		StatementImportResultDTO result = statementImportService.importStatement(card.getCardId(),
+				new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), false);
+		double seconds = (System.nanoTime() - begin) / 1_000_000_000.0;
+		logger.info("### {} line statement imported in {} s : {}", LINES + 1, String.format("%.2f", seconds), result);
+
+		assertEquals(LINES + 1, result.getLines());
+		assertEquals(expectedCreated, result.getCreated());
+		assertEquals(expectedSkipped, result.getSkipped());
+		assertEquals(1, result.getRejected());
+		assertTrue(result.getErrors().get(0).startsWith("line " + (LINES + 2) + ":"), result.getErrors().toString());
+
+		BigDecimal usedLimit = new TransactionTemplate(transactionManager)
+				.execute(status -> entityManager.find(CreditCard.class, card.getCardId()).getUsedLimit());
+		assertEquals(0, expectedTotal.compareTo(usedLimit));
+	}
+}
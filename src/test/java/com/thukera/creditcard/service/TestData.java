@@ -0,0 +1,54 @@
+package com.thukera.creditcard.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.user.model.entities.User;
+
+/**
+ * Users and cards shared by the service tests : Lucy and her Nubank card, billed from day 1 to 28
+ * Tests tweak the card from card(owner) before persisting it when they need another limit or cycle
+ */
+final class TestData {
+
+	static final String LUCY_DOC = "12345678900";
+
+	private TestData() {
+	}
+
+	/**
+	 * Persist Lucy and her Roxinho card with the default cycle and limit
+	 */
+	static CreditCard persistCardWithOwner(TestEntityManager entityManager) {
+		return entityManager.persist(card(persistUser(entityManager, LUCY_DOC, "lucy")));
+	}
+
+	/**
+	 * Persist an active user named after its username, mail username@mail.com
+	 */
+	static User persistUser(TestEntityManager entityManager, String doc, String username) {
+		User user = new User(doc, username, username, username + "@mail.com", "secret", true);
+		user.setDataCadastro(LocalDate.now());
+		return entityManager.persist(user);
+	}
+
+	/**
+	 * New Roxinho card of the owner, not persisted : billed from day 1 to 28, due on the 5th, 5000.00 limit
+	 */
+	static CreditCard card(User owner) {
+		CreditCard card = new CreditCard();
+		card.setUser(owner);
+		card.setBank("Nubank");
+		card.setEndnumbers("1234");
+		card.setNickname("Roxinho");
+		card.setBillingPeriodStart(1);
+		card.setBillingPeriodEnd(28);
+		card.setDueDate(5);
+		card.setTotalLimit(new BigDecimal("5000.00"));
+		card.setUsedLimit(BigDecimal.ZERO);
+		return card;
+	}
+}
@@ -0,0 +1,143 @@
+package com.thukera.creditcard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.thukera.creditcard.mapper.CreditCardMapper;
+import com.thukera.creditcard.model.dto.PurchaseDTO;
+import com.thukera.creditcard.model.entities.CreditCard;
+import com.thukera.creditcard.model.entities.Invoice;
+import com.thukera.creditcard.model.form.CreditPurchaseForm;
+import com.thukera.user.model.entities.User;
+import com.thukera.user.service.AuthenticationHelper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ CreditPurchaseService.class, InvoiceService.class, CreditCardService.class, CreditCardMapper.class,
+		CreditTransactionService.class, InvoiceSummaryService.class, BillingCalendarService.class,
+		RecurringChargeService.class, InvoiceTotalsService.class,
+		InvoiceProvisioningService.class, CardLocks.class, SimpleMeterRegistry.class })
+class UsedLimitAccountingTests {
+
+	@Autowired
+	private CreditPurchaseService creditPurchaseService;
+
+	@Autowired
+	private InvoiceService invoiceService;
+
+	@Autowired
+	private CreditCardService creditCardService;
+
+	@Autowired
+	private CreditTransactionService creditTransactionService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@MockBean
+	private AuthenticationHelper authHelper;
+
+	private CreditCard card;
+
+	@BeforeEach
+	void setUp() {
+		card = TestData.persistCardWithOwner(entityManager);
+		User user = card.getUser();
+
+		when(authHelper.isCurrentUserAdmin()).thenReturn(false);
+		when(authHelper.getCurrentUserId()).thenReturn(user.getId());
+		when(authHelper.canAccessUserResource(user.getId())).thenReturn(true);
+	}
+
+	@Test
+	void usedLimitFollowsPurchaseChangesAndPaidInvoices() {
+		creditPurchaseService.createPurchase(form("100.00", 1));
+		PurchaseDTO split = creditPurchaseService.createPurchase(form("90.00", 3));
+		PurchaseDTO removed = creditPurchaseService.createPurchase(form("45.00", 1));
+		assertUsedLimit("235.00");
+
+		// new value and installment plan : old installments off, new ones on
+		creditPurchaseService.updatePurchaseById(split.getPurchaseId(), form("120.00", 2));
+		assertUsedLimit("265.00");
+
+		creditPurchaseService.deletePurchase(removed.getPurchaseId());
+		assertUsedLimit("220.00");
+
+		// 100.00 and the first 60.00 installment on the current invoice
+		Invoice current = invoices().get(0);
+		assertEquals(0, new BigDecimal("160.00").compareTo(current.getTotalAmount()));
+		invoiceService.putInvoiceStatus(current.getInvoiceId(), "PAID");
+		assertUsedLimit("60.00");
+
+		// purchases billed on a PAID invoice stay off the used limit
+		creditPurchaseService.updatePurchaseById(split.getPurchaseId(), form("150.00", 2));
+		assertUsedLimit("75.00");
+
+		invoiceService.putInvoiceStatus(current.getInvoiceId(), "CLOSED");
+		assertUsedLimit("250.00");
+
+		// the aggregate fallback rebuilds what the deltas maintain
+		entityManager.getEntityManager().createNativeQuery("UPDATE tb_credit_card SET used_limit = 0").executeUpdate();
+		assertUsedLimit("0.00");
+		creditCardService.updateCreditCardUsedLimit(entityManager.find(CreditCard.class, card.getCardId()));
+		assertUsedLimit("250.00");
+	}
+
+	@Test
+	void driftedTotalsAreRecomputedFromTheirLines() {
+		creditPurchaseService.createPurchase(form("100.00", 1));
+		creditPurchaseService.createPurchase(form("90.00", 3));
+		entityManager.flush();
+		entityManager.getEntityManager().createNativeQuery("UPDATE tb_invoice SET total_amount = 999").executeUpdate();
+		entityManager.getEntityManager().createNativeQuery("UPDATE tb_credit_card SET used_limit = 999").executeUpdate();
+		entityManager.clear();
+
+		List<Invoice> invoices = invoices();
+		Invoice recomputed = creditTransactionService.updateTotalAmount(invoices.get(0).getInvoiceId());
+		assertEquals(0, new BigDecimal("130.00").compareTo(recomputed.getTotalAmount()));
+
+		// the other invoices keep their drift, the used limit sums what is stored
+		assertUsedLimit("2128.00");
+		assertEquals(0, new BigDecimal("999").compareTo(invoices().get(1).getTotalAmount()));
+	}
+
+	private void assertUsedLimit(String expected) {
+		entityManager.flush();
+		entityManager.clear();
+		BigDecimal usedLimit = entityManager.find(CreditCard.class, card.getCardId()).getUsedLimit();
+		assertEquals(0, new BigDecimal(expected).compareTo(usedLimit), "used limit " + usedLimit + ", expected " + expected);
+	}
+
+	private List<Invoice> invoices() {
+		return entityManager.getEntityManager()
+				.createQuery("SELECT i FROM Invoice i WHERE i.creditCard.cardId = :cardId ORDER BY i.startDate", Invoice.class)
+				.setParameter("cardId", card.getCardId())
+				.getResultList();
+	}
+
+	private CreditPurchaseForm form(String value, int installments) {
+		CreditPurchaseForm form = new CreditPurchaseForm();
+		form.setCreditCardId(card.getCardId());
+		form.setDescricao("Mercado");
+		form.setValue(new BigDecimal(value));
+		form.setCategory("Mercado");
+		form.setTotalInstallments(installments);
+		return form;
+	}
+}
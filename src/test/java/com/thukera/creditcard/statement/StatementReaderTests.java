@@ -0,0 +1,116 @@
+package com.thukera.creditcard.statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class StatementReaderTests {
+
+	@Test
+	void csvWithHeaderReadsColumnsByName() throws Exception {
+		List<StatementLine> lines = read("""
+				date,category,title,amount
+				2025-01-05,Mercado,"Padaria, Pão & Cia",23.90
+				2025-01-06,Eletrônicos,Loja Tech 03/10,150.00
+				2025-01-07,,Pagamento recebido,-500.00
+				2025-01-08,Viagem,Hotel - Parcela 1/3,"1,200.50"
+				not a date,x,y,1
+				""");
+
+		assertEquals(5, lines.size());
+		assertLine(lines.get(0), "2025-01-05", "Padaria, Pão & Cia", "23.90", "Mercado", 0, 0);
+		assertLine(lines.get(1), "2025-01-06", "Loja Tech", "150.00", "Eletrônicos", 3, 10);
+		assertLine(lines.get(2), "2025-01-07", "Pagamento recebido", "-500.00", null, 0, 0);
+		assertLine(lines.get(3), "2025-01-08", "Hotel", "1200.50", "Viagem", 1, 3);
+		assertFalse(lines.get(4).isValid());
+		assertEquals(6, lines.get(4).lineNumber());
+	}
+
+	@Test
+	void headerlessSemicolonCsvUsesBrazilianNumbers() throws Exception {
+		List<StatementLine> lines = read("""
+				05/01/2025;Supermercado;R$ 1.234,56
+
+				06/01/2025;Assinatura 12/2025;9,90
+				""");
+
+		assertEquals(2, lines.size());
+		assertLine(lines.get(0), "2025-01-05", "Supermercado", "1234.56", null, 0, 0);
+		// 12/2025 is not an installment marker
+		assertLine(lines.get(1), "2025-01-06", "Assinatura 12/2025", "9.90", null, 0, 0);
+		assertEquals(3, lines.get(1).lineNumber());
+	}
+
+	@Test
+	void ofxChargesAreReadAsPositiveValues() throws Exception {
+		String ofx = """
+				OFXHEADER:100
+				DATA:OFXSGML
+
+				<OFX><CREDITCARDMSGSRSV1><CCSTMTTRNRS><CCSTMTRS><BANKTRANLIST>
+				<STMTTRN>
+				<TRNTYPE>DEBIT
+				<DTPOSTED>20250110000000[-3:BRT]
+				<TRNAMT>-89.90
+				<MEMO>Restaurante 02/04
+				</STMTTRN>
+				<STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20250112<TRNAMT>300.00<NAME>Pagamento</NAME></STMTTRN>
+				<STMTTRN><DTPOSTED>bad<TRNAMT>-1.00<MEMO>x</STMTTRN>
+				</BANKTRANLIST></CCSTMTRS></CCSTMTTRNRS></CREDITCARDMSGSRSV1></OFX>
+				""";
+		try (StatementReader reader = StatementReader.open(stream(ofx))) {
+			assertInstanceOf(OfxStatementReader.class, reader);
+		}
+		List<StatementLine> lines = read(ofx);
+
+		assertEquals(3, lines.size());
+		assertLine(lines.get(0), "2025-01-10", "Restaurante", "89.90", null, 2, 4);
+		assertLine(lines.get(1), "2025-01-12", "Pagamento", "-300.00", null, 0, 0);
+		assertFalse(lines.get(2).isValid());
+	}
+
+	@Test
+	void csvWithoutRequiredColumnsIsRejected() throws Exception {
+		assertThrows(IllegalArgumentException.class, () -> read("foo,bar\n1,2\n"));
+		assertTrue(read("").isEmpty());
+	}
+
+	private static void assertLine(StatementLine line, String date, String description, String value, String category,
+			int installment, int totalInstallments) {
+		assertTrue(line.isValid(), line.error());
+		assertEquals(LocalDate.parse(date), line.date());
+		assertEquals(description, line.description());
+		assertEquals(new BigDecimal(value), line.value());
+		if (category == null) {
+			assertNull(line.category());
+		} else {
+			assertEquals(category, line.category());
+		}
+		assertEquals(installment, line.installment());
+		assertEquals(totalInstallments, line.totalInstallments());
+	}
+
+	private static List<StatementLine> read(String content) throws Exception {
+		List<StatementLine> lines = new ArrayList<>();
+		try (StatementReader reader = StatementReader.open(stream(content))) {
+			reader.forEachRemaining(lines::add);
+		}
+		return lines;
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}